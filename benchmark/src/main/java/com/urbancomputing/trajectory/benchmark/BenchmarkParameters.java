@@ -0,0 +1,25 @@
+package com.urbancomputing.trajectory.benchmark;
+
+/**
+ * clustering parameters of the benchmarks, the ones of TrajectoryClusterTest
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+public class BenchmarkParameters {
+    static final long SEED = 1993L;
+
+    // trajectory partition parameters
+    static final double PARTITION_MIN_SEGMENT_LENGTH = 50.0;
+
+    // segments dbscan cluster parameters
+    static final double DBSCAN_EPS = 25.0;
+    static final int DBSCAN_MIN_NUM = 5;
+    static final double DBSCAN_TARGET_RECALL = 0.95;
+    static final int DBSCAN_APPROXIMATION_SAMPLE_SIZE = 1000;
+
+    // compute representative trajectory parameters
+    static final double REP_MIN_SMOOTHING_LENGTH = 30.0;
+    static final int REP_MIN_TRAJ_NUM_FOR_CLUSTER = 10;
+    static final int REP_MIN_SEGMENT_NUM_FOR_SWEEP = 10;
+}
@@ -0,0 +1,22 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks with the gc profiler reporting allocation rates, accepts the usual jmh command line such as
+ * "DBScan -p scale=10"
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
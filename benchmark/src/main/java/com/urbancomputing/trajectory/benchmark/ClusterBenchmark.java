@@ -0,0 +1,40 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryCluster;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.urbancomputing.trajectory.benchmark.BenchmarkParameters.*;
+
+/**
+ * end to end trajectory cluster of a synthetic dataset
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ClusterBenchmark {
+    @Param({"10", "100", "1000"})
+    int scale;
+
+    ArrayList<Trajectory> trajs;
+
+    @Setup
+    public void setup() {
+        trajs = SyntheticTrajectoryGenerator.generate(scale, SEED);
+    }
+
+    @Benchmark
+    public ArrayList<Trajectory> doCluster() throws Exception {
+        return new TrajectoryCluster(trajs, PARTITION_MIN_SEGMENT_LENGTH, DBSCAN_EPS, DBSCAN_MIN_NUM,
+                REP_MIN_SMOOTHING_LENGTH, REP_MIN_TRAJ_NUM_FOR_CLUSTER, REP_MIN_SEGMENT_NUM_FOR_SWEEP).doCluster();
+    }
+}
@@ -0,0 +1,49 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryDBScan;
+import com.urbancomputing.trajectory.cluster.TrajectoryPartition;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.urbancomputing.trajectory.benchmark.BenchmarkParameters.*;
+
+/**
+ * segment dbscan over the partition of a synthetic dataset, exact and through the hash tables of the approximate mode
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DBScanBenchmark {
+    @Param({"10", "100", "1000"})
+    int scale;
+
+    SegmentStore store;
+
+    @Setup
+    public void setup() throws Exception {
+        store = new TrajectoryPartition(SyntheticTrajectoryGenerator.generate(scale, SEED), PARTITION_MIN_SEGMENT_LENGTH)
+                .partitionToStore();
+    }
+
+    @Benchmark
+    public IntBuffer cluster() {
+        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(store, DBSCAN_EPS, DBSCAN_MIN_NUM);
+        return trajectoryDBScan.clusterToBuffer();
+    }
+
+    @Benchmark
+    public IntBuffer approximateCluster() {
+        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(store, DBSCAN_EPS, DBSCAN_MIN_NUM);
+        trajectoryDBScan.setApproximation(DBSCAN_TARGET_RECALL, DBSCAN_APPROXIMATION_SAMPLE_SIZE);
+        return trajectoryDBScan.clusterToBuffer();
+    }
+}
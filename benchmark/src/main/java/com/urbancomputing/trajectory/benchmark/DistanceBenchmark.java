@@ -0,0 +1,109 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryDistance;
+import com.urbancomputing.trajectory.cluster.TrajectoryPartition;
+import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.urbancomputing.trajectory.benchmark.BenchmarkParameters.*;
+
+/**
+ * segment to segment distance over random pairs of segments
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceBenchmark {
+    static final int PAIR_NUM = 1024;
+
+    @Param({"10"})
+    int scale;
+
+    SegmentStore store;
+    Segment[] segments;
+    int[] firsts = new int[PAIR_NUM];
+    int[] seconds = new int[PAIR_NUM];
+    /**
+     * coordinate columns of the first PAIR_NUM segments for the batch kernel
+     */
+    double[] x1s = new double[PAIR_NUM], y1s = new double[PAIR_NUM], x2s = new double[PAIR_NUM], y2s = new double[PAIR_NUM];
+    double[] lengths = new double[PAIR_NUM], distances = new double[PAIR_NUM];
+
+    @Setup
+    public void setup() throws Exception {
+        store = new TrajectoryPartition(SyntheticTrajectoryGenerator.generate(scale, SEED), PARTITION_MIN_SEGMENT_LENGTH)
+                .partitionToStore();
+        segments = store.toSegments().toArray(new Segment[0]);
+        Random random = new Random(SEED);
+        for (int k = 0; k < PAIR_NUM; k++) {
+            firsts[k] = random.nextInt(store.size());
+            seconds[k] = random.nextInt(store.size());
+            x1s[k] = store.getX1(k);
+            y1s[k] = store.getY1(k);
+            x2s[k] = store.getX2(k);
+            y2s[k] = store.getY2(k);
+            lengths[k] = store.getLength(k);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIR_NUM)
+    public double segmentObjects() {
+        double sum = 0.0;
+        for (int k = 0; k < PAIR_NUM; k++) {
+            sum += TrajectoryDistance.computeSegmentToSegmentDistance(segments[firsts[k]], segments[seconds[k]]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIR_NUM)
+    public double segmentStore() {
+        double sum = 0.0;
+        for (int k = 0; k < PAIR_NUM; k++) {
+            sum += TrajectoryDistance.computeSegmentToSegmentDistance(store, firsts[k], seconds[k]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIR_NUM)
+    public int segmentStoreBounded() {
+        int withinEpsNum = 0;
+        for (int k = 0; k < PAIR_NUM; k++) {
+            if (TrajectoryDistance.computeBoundedSegmentToSegmentDistance(store, firsts[k], seconds[k], DBSCAN_EPS) <= DBSCAN_EPS) {
+                withinEpsNum++;
+            }
+        }
+        return withinEpsNum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIR_NUM)
+    public double segmentStoreBlock() {
+        double sum = 0.0;
+        for (int k = 0; k < PAIR_NUM; k++) {
+            sum += TrajectoryDistance.computeSegmentToSegmentDistance(store, firsts[0], k);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIR_NUM)
+    public double[] segmentColumnsBatch() {
+        int query = firsts[0];
+        TrajectoryDistance.computeSegmentToSegmentDistances(store.getX1(query), store.getY1(query), store.getX2(query),
+                store.getY2(query), store.getLength(query), x1s, y1s, x2s, y2s, lengths, 0, PAIR_NUM, distances);
+        return distances;
+    }
+}
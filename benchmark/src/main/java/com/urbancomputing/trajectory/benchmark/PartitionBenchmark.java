@@ -0,0 +1,40 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryPartition;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.urbancomputing.trajectory.benchmark.BenchmarkParameters.*;
+
+/**
+ * trajectory partition of a synthetic dataset
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PartitionBenchmark {
+    @Param({"10", "100", "1000"})
+    int scale;
+
+    ArrayList<Trajectory> trajs;
+
+    @Setup
+    public void setup() {
+        trajs = SyntheticTrajectoryGenerator.generate(scale, SEED);
+    }
+
+    @Benchmark
+    public SegmentStore partition() throws Exception {
+        return new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH).partitionToStore();
+    }
+}
@@ -0,0 +1,46 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryPartition;
+import com.urbancomputing.trajectory.cluster.TrajectoryRenderer;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.urbancomputing.trajectory.benchmark.BenchmarkParameters.*;
+
+/**
+ * overview image of the raw trajectories and segments of a synthetic dataset
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Djava.awt.headless=true"})
+public class RenderBenchmark {
+    @Param({"10", "100", "1000"})
+    int scale;
+
+    TrajectoryRenderer renderer;
+    TrajectoryRenderer.Viewport viewport;
+
+    @Setup
+    public void setup() throws Exception {
+        ArrayList<Trajectory> trajs = SyntheticTrajectoryGenerator.generate(scale, SEED);
+        SegmentStore store = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH).partitionToStore();
+        renderer = new TrajectoryRenderer(trajs, store, null);
+        viewport = renderer.fitViewport(2048, 2048);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        return renderer.render(viewport);
+    }
+}
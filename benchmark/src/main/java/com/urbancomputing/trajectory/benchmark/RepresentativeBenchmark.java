@@ -0,0 +1,50 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryDBScan;
+import com.urbancomputing.trajectory.cluster.TrajectoryPartition;
+import com.urbancomputing.trajectory.cluster.TrajectoryRepresentative;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.urbancomputing.trajectory.benchmark.BenchmarkParameters.*;
+
+/**
+ * representative trajectories of the clusters of a synthetic dataset
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RepresentativeBenchmark {
+    @Param({"10", "100", "1000"})
+    int scale;
+
+    SegmentStore store;
+    int[] labels;
+    int clusterNum;
+
+    @Setup
+    public void setup() throws Exception {
+        store = new TrajectoryPartition(SyntheticTrajectoryGenerator.generate(scale, SEED), PARTITION_MIN_SEGMENT_LENGTH)
+                .partitionToStore();
+        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(store, DBSCAN_EPS, DBSCAN_MIN_NUM);
+        labels = OffHeapBuffers.toArray(trajectoryDBScan.clusterToBuffer());
+        clusterNum = trajectoryDBScan.getClusterNum();
+    }
+
+    @Benchmark
+    public ArrayList<Trajectory> compute() {
+        return new TrajectoryRepresentative(store, labels, clusterNum, REP_MIN_SMOOTHING_LENGTH,
+                REP_MIN_TRAJ_NUM_FOR_CLUSTER, REP_MIN_SEGMENT_NUM_FOR_SWEEP).compute();
+    }
+}
@@ -0,0 +1,101 @@
+package com.urbancomputing.trajectory.benchmark;
+
+import com.urbancomputing.trajectory.model.ArrayTrajectory;
+import com.urbancomputing.trajectory.model.Trajectory;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * seeded generator of animal-like trajectories resembling elk_1993 and deer_1995
+ * <p>
+ * the base dataset holds 32 trajectories of 300 to 1700 points over a 1170 x 680 area, animals walk with persistent
+ * headings and log-normal steps (median about 12) between shared habitat patches on a jittered grid so that their
+ * paths overlap, a dataset of scale s holds s times the trajectories over s times the area, keeping the density of the
+ * real data
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+public class SyntheticTrajectoryGenerator {
+    static final int BASE_TRAJ_NUM = 32;
+    static final double BASE_WIDTH = 1170.0;
+    static final double BASE_HEIGHT = 680.0;
+    static final int MIN_POINT_NUM = 300;
+    static final int MAX_POINT_NUM = 1700;
+    /**
+     * patch grid of the base area
+     */
+    static final int BASE_PATCH_COLS = 4;
+    static final int BASE_PATCH_ROWS = 3;
+    static final double MEDIAN_STEP = 12.0;
+    static final double STEP_SIGMA = 0.9;
+    /**
+     * share of the heading kept from the previous step, the rest turns towards the target patch
+     */
+    static final double HEADING_PERSISTENCE = 0.5;
+    static final double HEADING_NOISE = 0.3;
+    static final double PATCH_RADIUS = 40.0;
+
+    public static ArrayList<Trajectory> generate(int scale, long seed) {
+        Random random = new Random(seed);
+        double side = Math.sqrt(scale);
+        double width = BASE_WIDTH * side, height = BASE_HEIGHT * side;
+        int cols = Math.max((int) Math.round(BASE_PATCH_COLS * side), 1);
+        int rows = Math.max((int) Math.round(BASE_PATCH_ROWS * side), 1);
+        double[] patchXs = new double[cols * rows], patchYs = new double[cols * rows];
+        for (int p = 0; p < cols * rows; p++) {
+            patchXs[p] = (p % cols + random.nextDouble()) * width / cols;
+            patchYs[p] = (p / cols + random.nextDouble()) * height / rows;
+        }
+
+        ArrayList<Trajectory> trajs = new ArrayList<>(BASE_TRAJ_NUM * scale);
+        for (int t = 0; t < BASE_TRAJ_NUM * scale; t++) {
+            int pointNum = MIN_POINT_NUM + random.nextInt(MAX_POINT_NUM - MIN_POINT_NUM + 1);
+            double[] xs = new double[pointNum], ys = new double[pointNum];
+            // animals roam among the patches near their home patch
+            int home = random.nextInt(cols * rows);
+            int target = nearbyPatch(random, home, cols, rows);
+            double x = patchXs[home], y = patchYs[home];
+            double heading = random.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < pointNum; i++) {
+                xs[i] = round(x);
+                ys[i] = round(y);
+                double dx = patchXs[target] - x, dy = patchYs[target] - y;
+                if (dx * dx + dy * dy < PATCH_RADIUS * PATCH_RADIUS) {
+                    target = nearbyPatch(random, home, cols, rows);
+                }
+                double targetHeading = Math.atan2(dy, dx);
+                double turn = Math.atan2(Math.sin(targetHeading - heading), Math.cos(targetHeading - heading));
+                heading += (1 - HEADING_PERSISTENCE) * turn + HEADING_NOISE * random.nextGaussian();
+                double step = MEDIAN_STEP * Math.exp(STEP_SIGMA * random.nextGaussian());
+                x = reflect(x + step * Math.cos(heading), width);
+                y = reflect(y + step * Math.sin(heading), height);
+            }
+            trajs.add(new ArrayTrajectory(Integer.toString(t), xs, ys));
+        }
+        return trajs;
+    }
+
+    /**
+     * random patch of the grid cells around the home patch
+     */
+    private static int nearbyPatch(Random random, int home, int cols, int rows) {
+        int col = Math.min(Math.max(home % cols + random.nextInt(3) - 1, 0), cols - 1);
+        int row = Math.min(Math.max(home / cols + random.nextInt(3) - 1, 0), rows - 1);
+        return row * cols + col;
+    }
+
+    private static double reflect(double v, double max) {
+        if (v < 0) return -v;
+        if (v > max) return 2 * max - v;
+        return v;
+    }
+
+    /**
+     * the real data keeps one decimal
+     */
+    private static double round(double v) {
+        return Math.round(v * 10) / 10.0;
+    }
+}
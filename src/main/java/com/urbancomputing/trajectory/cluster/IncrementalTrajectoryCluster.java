@@ -0,0 +1,315 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.index.DynamicGridSegmentIndex;
+import com.urbancomputing.trajectory.model.Point;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+
+/**
+ * online trajectory cluster which accepts new trajectories after the first run, only the new trajectories are
+ * partitioned, labels are updated around the new segments by the insertion rules of incremental dbscan and only the
+ * representative trajectories of changed clusters are recomputed
+ * <p>
+ * core segments are grouped exactly as a batch run over all trajectories added so far would group them, a border
+ * segment close to several clusters may join another one of them and cluster ids may be numbered differently
+ *
+ * @author yuzisheng
+ * @date 2021/11/26
+ */
+public class IncrementalTrajectoryCluster {
+    // trajectory partition parameters
+    double partitionMinSegmentLength;
+
+    // segments dbscan cluster parameters
+    double dbscanEps;
+    int dbscanMinNum;
+
+    // compute representative trajectory parameters
+    double repMinSmoothingLength;
+    int repMinTrajNumForCluster;
+    int repMinSegmentNumForSweep;
+
+    /**
+     * segments of all trajectories added so far
+     */
+    SegmentStore store = new SegmentStore();
+    DynamicGridSegmentIndex index;
+    /**
+     * cluster id of each segment, noise is -1
+     */
+    int[] labels = new int[0];
+    /**
+     * size of the eps neighborhood of each segment including itself
+     */
+    int[] neighborCounts = new int[0];
+    /**
+     * number of clusters, ids are kept dense in [0, clusterNum) between two batches
+     */
+    int clusterNum;
+    /**
+     * representative points of each cluster, null if it can not form a representative trajectory
+     */
+    ArrayList<ArrayList<Point>> representativePoints = new ArrayList<>();
+    /**
+     * clusters whose representative points are out of date
+     */
+    BitSet dirtyClusters = new BitSet();
+
+    // state of the batch being added
+    private int[] parent;
+    private final BitSet newCores = new BitSet();
+    private final BitSet visited = new BitSet();
+    private final IntList neighborhood = new IntList();
+    private final double radius;
+
+    private final int UNCLASSIFIED_ID = -2;
+    private final int NOISE_ID = -1;
+
+    public IncrementalTrajectoryCluster(double partitionMinSegmentLength,
+                                        double dbscanEps,
+                                        int dbscanMinNum,
+                                        double repMinSmoothingLength,
+                                        int repMinTrajNumForCluster,
+                                        int repMinSegmentNumForSweep) {
+        this.partitionMinSegmentLength = partitionMinSegmentLength;
+        this.dbscanEps = dbscanEps;
+        this.dbscanMinNum = dbscanMinNum;
+        this.repMinSmoothingLength = repMinSmoothingLength;
+        this.repMinTrajNumForCluster = repMinTrajNumForCluster;
+        this.repMinSegmentNumForSweep = repMinSegmentNumForSweep;
+        this.radius = computeSearchRadius(dbscanEps);
+        this.index = new DynamicGridSegmentIndex(store, radius);
+    }
+
+    /**
+     * partition the new trajectories and update the clusters around their segments
+     */
+    public void addTrajectories(List<Trajectory> trajs) throws Exception {
+        int from = store.size();
+        TrajectoryPartition.partition(trajs.iterator(), partitionMinSegmentLength, store::add);
+        int n = store.size();
+        if (n == from) {
+            return;
+        }
+        labels = Arrays.copyOf(labels, n);
+        Arrays.fill(labels, from, n, UNCLASSIFIED_ID);
+        neighborCounts = Arrays.copyOf(neighborCounts, n);
+        for (int i = from; i < n; i++) {
+            index.add(i);
+        }
+
+        // update neighborhood sizes, old segments only gain the new segments within eps of them, evaluated from the
+        // old segment as a batch run would since segments of equal length are not at the same distance both ways
+        newCores.clear();
+        for (int i = from; i < n; i++) {
+            computeEpsNeighborhood(i);
+            neighborCounts[i] = neighborhood.size();
+            if (neighborCounts[i] >= dbscanMinNum) {
+                newCores.set(i);
+            }
+            int newSegment = i;
+            index.query(store.getMinX(i) - radius, store.getMinY(i) - radius,
+                    store.getMaxX(i) + radius, store.getMaxY(i) + radius, q -> {
+                        if (q < from && computeSegmentToSegmentDistance(store, q, newSegment) <= dbscanEps
+                                && ++neighborCounts[q] == dbscanMinNum) {
+                            newCores.set(q);
+                        }
+                    });
+        }
+
+        // ids of merged clusters are linked to their survivor and resolved at the end of the batch
+        parent = new int[clusterNum];
+        for (int c = 0; c < clusterNum; c++) {
+            parent[c] = c;
+        }
+        visited.clear();
+        IntList component = new IntList();
+        IntList borders = new IntList();
+        for (int seed = newCores.nextSetBit(0); seed >= 0; seed = newCores.nextSetBit(seed + 1)) {
+            if (visited.get(seed)) {
+                continue;
+            }
+            // collect the new cores density connected to the seed and the clusters of old cores they reach
+            component.clear();
+            borders.clear();
+            int componentId = -1;
+            visited.set(seed);
+            component.add(seed);
+            for (int head = 0; head < component.size(); head++) {
+                computeEpsNeighborhood(component.get(head));
+                for (int k = 0; k < neighborhood.size(); k++) {
+                    int q = neighborhood.get(k);
+                    if (neighborCounts[q] < dbscanMinNum) {
+                        borders.add(q);
+                    } else if (!newCores.get(q)) {
+                        componentId = componentId < 0 ? find(labels[q]) : union(componentId, labels[q]);
+                    } else if (!visited.get(q)) {
+                        visited.set(q);
+                        component.add(q);
+                    }
+                }
+            }
+            if (componentId < 0) {
+                componentId = newClusterId();
+            }
+            for (int k = 0; k < component.size(); k++) {
+                relabel(component.get(k), componentId);
+            }
+            for (int k = 0; k < borders.size(); k++) {
+                int q = borders.get(k);
+                if (labels[q] < 0) {
+                    relabel(q, componentId);
+                }
+            }
+        }
+
+        // remaining new segments join the cluster of any core segment they are within eps of or become noise
+        for (int i = from; i < n; i++) {
+            if (labels[i] != UNCLASSIFIED_ID) {
+                continue;
+            }
+            labels[i] = NOISE_ID;
+            int newSegment = i;
+            index.query(store.getMinX(i) - radius, store.getMinY(i) - radius,
+                    store.getMaxX(i) + radius, store.getMaxY(i) + radius, q -> {
+                        if (labels[newSegment] == NOISE_ID && neighborCounts[q] >= dbscanMinNum && labels[q] >= 0
+                                && computeSegmentToSegmentDistance(store, q, newSegment) <= dbscanEps) {
+                            relabel(newSegment, labels[q]);
+                        }
+                    });
+        }
+        compactClusterIds();
+        parent = null;
+    }
+
+    /**
+     * representative trajectories of the current clusters, only changed clusters are recomputed
+     */
+    public ArrayList<Trajectory> getRepresentativeTrajectories() {
+        if (!dirtyClusters.isEmpty()) {
+            int[] clusters = dirtyClusters.stream().toArray();
+            TrajectoryRepresentative trajectoryRepresentative = new TrajectoryRepresentative(store, labels, clusterNum,
+                    repMinSmoothingLength, repMinTrajNumForCluster, repMinSegmentNumForSweep);
+            ArrayList<ArrayList<Point>> points = trajectoryRepresentative.computeClusters(clusters);
+            for (int s = 0; s < clusters.length; s++) {
+                representativePoints.set(clusters[s], points.get(s));
+            }
+            dirtyClusters.clear();
+        }
+        int newCurrClusterId = 0;
+        ArrayList<Trajectory> representativeTrajs = new ArrayList<>();
+        for (ArrayList<Point> points : representativePoints) {
+            if (points != null) {
+                representativeTrajs.add(new Trajectory(Integer.toString(newCurrClusterId), points));
+                newCurrClusterId++;
+            }
+        }
+        return representativeTrajs;
+    }
+
+    public int getClusterNum() {
+        return clusterNum;
+    }
+
+    /**
+     * cluster id of each segment in the order segments were added, noise is -1
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public SegmentStore getSegments() {
+        return store;
+    }
+
+    private void computeEpsNeighborhood(int i) {
+        neighborhood.clear();
+        index.query(store.getMinX(i) - radius, store.getMinY(i) - radius,
+                store.getMaxX(i) + radius, store.getMaxY(i) + radius, j -> {
+                    if (computeSegmentToSegmentDistance(store, i, j) <= dbscanEps) neighborhood.add(j);
+                });
+    }
+
+    private void relabel(int i, int clusterId) {
+        if (labels[i] >= 0) {
+            dirtyClusters.set(labels[i]);
+        }
+        labels[i] = clusterId;
+        dirtyClusters.set(clusterId);
+    }
+
+    private int newClusterId() {
+        if (clusterNum == parent.length) {
+            parent = Arrays.copyOf(parent, clusterNum * 2 + 1);
+        }
+        parent[clusterNum] = clusterNum;
+        representativePoints.add(null);
+        return clusterNum++;
+    }
+
+    private int find(int c) {
+        while (parent[c] != c) {
+            parent[c] = parent[parent[c]];
+            c = parent[c];
+        }
+        return c;
+    }
+
+    /**
+     * merge two clusters into the one with the smaller id
+     */
+    private int union(int a, int b) {
+        a = find(a);
+        b = find(b);
+        if (a != b) {
+            parent[Math.max(a, b)] = Math.min(a, b);
+            dirtyClusters.set(Math.min(a, b));
+        }
+        return Math.min(a, b);
+    }
+
+    /**
+     * resolve merged ids and drop clusters left without segments so that ids stay dense
+     */
+    private void compactClusterIds() {
+        int[] sizes = new int[clusterNum];
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] >= 0) {
+                labels[i] = find(labels[i]);
+                sizes[labels[i]]++;
+            }
+        }
+        int[] remap = new int[clusterNum];
+        int newClusterNum = 0;
+        ArrayList<ArrayList<Point>> newRepresentativePoints = new ArrayList<>();
+        BitSet newDirtyClusters = new BitSet();
+        for (int c = 0; c < clusterNum; c++) {
+            if (sizes[c] > 0) {
+                remap[c] = newClusterNum++;
+                newRepresentativePoints.add(representativePoints.get(c));
+            }
+        }
+        for (int c = dirtyClusters.nextSetBit(0); c >= 0; c = dirtyClusters.nextSetBit(c + 1)) {
+            if (sizes[find(c)] > 0) {
+                newDirtyClusters.set(remap[find(c)]);
+            }
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] >= 0) {
+                labels[i] = remap[labels[i]];
+            }
+        }
+        clusterNum = newClusterNum;
+        representativePoints = newRepresentativePoints;
+        dirtyClusters = newDirtyClusters;
+    }
+}
@@ -0,0 +1,68 @@
+package com.urbancomputing.trajectory.cluster;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * runs every tile worker in its own local jvm process, standing in for one node per tile
+ *
+ * @author yuzisheng
+ * @date 2021/11/27
+ */
+public class LocalProcessTileExecutor implements TileExecutor {
+    /**
+     * maximum number of worker processes alive at the same time
+     */
+    int maxProcesses;
+    /**
+     * extra options of the worker jvm such as the heap size
+     */
+    List<String> jvmOptions = new ArrayList<>();
+
+    public LocalProcessTileExecutor(int maxProcesses) {
+        this.maxProcesses = Math.max(maxProcesses, 1);
+    }
+
+    public void setJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions = jvmOptions;
+    }
+
+    @Override
+    public void execute(File[] inputs, File[] outputs) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        ArrayDeque<Process> running = new ArrayDeque<>();
+        ArrayDeque<Integer> runningTiles = new ArrayDeque<>();
+        try {
+            for (int t = 0; t <= inputs.length; t++) {
+                // wait for the oldest worker when all slots are taken or every worker is started
+                while (!running.isEmpty() && (running.size() >= maxProcesses || t == inputs.length)) {
+                    int exitCode = running.poll().waitFor();
+                    int tile = runningTiles.poll();
+                    if (exitCode != 0) {
+                        throw new Exception("tile worker of " + inputs[tile] + " exits with code " + exitCode);
+                    }
+                }
+                if (t == inputs.length) {
+                    break;
+                }
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmOptions);
+                command.add("-cp");
+                command.add(classPath);
+                command.add(TileWorker.class.getName());
+                command.add(inputs[t].getPath());
+                command.add(outputs[t].getPath());
+                running.add(new ProcessBuilder(command).inheritIO().start());
+                runningTiles.add(t);
+            }
+        } finally {
+            for (Process process : running) {
+                process.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.index.LshSegmentIndex;
+import com.urbancomputing.trajectory.index.SegmentIndex;
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.util.IntHashSet;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.util.function.IntConsumer;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeBoundedSegmentToSegmentDistance;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistances;
+
+/**
+ * collect the eps neighborhood of a segment into a buffer, one instance per thread
+ * <p>
+ * candidates are gathered into coordinate columns and evaluated by the batch distance kernel, the bounded distance
+ * is evaluated pair by pair to stop early
+ *
+ * @author yuzisheng
+ * @date 2021/11/8
+ */
+class NeighborhoodCollector implements IntConsumer {
+    private final SegmentAccess store;
+    private final double eps;
+    private final double radius;
+    /**
+     * candidates come from the hash tables if there are any, otherwise from the index
+     */
+    private final SegmentIndex index;
+    private final LshSegmentIndex lshIndex;
+    private final boolean boundedDistance;
+    private final IntList neighborhood;
+    private final IntList candidates = new IntList();
+    private final IntHashSet visited = new IntHashSet();
+    private double[] x1s = new double[0], y1s = new double[0], x2s = new double[0], y2s = new double[0];
+    private double[] lengths = new double[0], distances = new double[0];
+    long evaluationNum;
+
+    NeighborhoodCollector(SegmentAccess store, double eps, SegmentIndex index, LshSegmentIndex lshIndex,
+                          boolean boundedDistance, IntList neighborhood) {
+        this.store = store;
+        this.eps = eps;
+        this.radius = computeSearchRadius(eps);
+        this.index = index;
+        this.lshIndex = lshIndex;
+        this.boundedDistance = boundedDistance;
+        this.neighborhood = neighborhood;
+    }
+
+    void search(int i) {
+        if (lshIndex != null) {
+            lshIndex.query(i, visited, candidates);
+        } else {
+            candidates.clear();
+            // only segments whose bounding box is within the search radius can be within eps
+            index.query(store.getMinX(i) - radius, store.getMinY(i) - radius,
+                    store.getMaxX(i) + radius, store.getMaxY(i) + radius, this);
+        }
+        int count = candidates.size();
+        evaluationNum += count;
+        if (boundedDistance) {
+            for (int k = 0; k < count; k++) {
+                int j = candidates.get(k);
+                if (computeBoundedSegmentToSegmentDistance(store, i, j, eps) <= eps) neighborhood.add(j);
+            }
+            return;
+        }
+        if (distances.length < count) {
+            int capacity = Math.max(count, 2 * distances.length);
+            x1s = new double[capacity];
+            y1s = new double[capacity];
+            x2s = new double[capacity];
+            y2s = new double[capacity];
+            lengths = new double[capacity];
+            distances = new double[capacity];
+        }
+        for (int k = 0; k < count; k++) {
+            int j = candidates.get(k);
+            x1s[k] = store.getX1(j);
+            y1s[k] = store.getY1(j);
+            x2s[k] = store.getX2(j);
+            y2s[k] = store.getY2(j);
+            lengths[k] = store.getLength(j);
+        }
+        computeSegmentToSegmentDistances(store.getX1(i), store.getY1(i), store.getX2(i), store.getY2(i), store.getLength(i),
+                x1s, y1s, x2s, y2s, lengths, 0, count, distances);
+        for (int k = 0; k < count; k++) {
+            if (distances[k] <= eps) neighborhood.add(candidates.get(k));
+        }
+    }
+
+    @Override
+    public void accept(int j) {
+        candidates.add(j);
+    }
+}
@@ -0,0 +1,19 @@
+package com.urbancomputing.trajectory.cluster;
+
+/**
+ * receives the metrics of {@link TrajectoryCluster#doCluster()} after every stage
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+@FunctionalInterface
+public interface PipelineListener {
+    enum Stage {
+        PARTITION, DBSCAN, REPRESENTATIVE
+    }
+
+    /**
+     * called on the clustering thread once a stage is finished, metrics of later stages are not filled yet
+     */
+    void onStageFinished(Stage stage, PipelineMetrics metrics);
+}
@@ -0,0 +1,116 @@
+package com.urbancomputing.trajectory.cluster;
+
+/**
+ * per stage metrics of one run of {@link TrajectoryCluster#doCluster()}, counters unknown to a mode are -1
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+public class PipelineMetrics {
+    // trajectory partition
+    long partitionTimeNanos;
+    int trajectoryNum;
+    long removedPointNum;
+    long characteristicPointNum;
+    int segmentNum;
+    boolean partitionLoaded;
+
+    // segments dbscan cluster
+    long dbscanTimeNanos;
+    long distanceEvaluationNum = -1;
+    int corePointNum;
+    int clusterNum;
+    int noiseNum;
+    int peakFrontierSize = -1;
+    boolean dbscanLoaded;
+
+    // compute representative trajectory
+    long representativeTimeNanos;
+    int representativeNum;
+
+    public long getPartitionTimeNanos() {
+        return partitionTimeNanos;
+    }
+
+    public int getTrajectoryNumber() {
+        return trajectoryNum;
+    }
+
+    /**
+     * points removed by the compression ahead of the partition, -1 when the segments are loaded from a checkpoint
+     */
+    public long getRemovedPointNumber() {
+        return removedPointNum;
+    }
+
+    public long getCharacteristicPointNumber() {
+        return characteristicPointNum;
+    }
+
+    public int getSegmentNumber() {
+        return segmentNum;
+    }
+
+    /**
+     * whether the segments are loaded from a checkpoint instead of partitioning
+     */
+    public boolean isPartitionLoaded() {
+        return partitionLoaded;
+    }
+
+    public long getDbscanTimeNanos() {
+        return dbscanTimeNanos;
+    }
+
+    /**
+     * segment pairs whose distance is evaluated, candidates pruned by the index are not counted
+     */
+    public long getDistanceEvaluationNumber() {
+        return distanceEvaluationNum;
+    }
+
+    public int getCorePointNumber() {
+        return corePointNum;
+    }
+
+    public int getClusterNumber() {
+        return clusterNum;
+    }
+
+    public int getNoiseNumber() {
+        return noiseNum;
+    }
+
+    /**
+     * largest number of segments waiting in the frontier of a cluster expansion
+     */
+    public int getPeakFrontierSize() {
+        return peakFrontierSize;
+    }
+
+    /**
+     * whether the labels are loaded from a checkpoint instead of clustering, distance evaluations and peak frontier
+     * size are unknown then
+     */
+    public boolean isDbscanLoaded() {
+        return dbscanLoaded;
+    }
+
+    public long getRepresentativeTimeNanos() {
+        return representativeTimeNanos;
+    }
+
+    public int getRepresentativeNumber() {
+        return representativeNum;
+    }
+
+    @Override
+    public String toString() {
+        return "partition: " + partitionTimeNanos / 1e6 + " ms, " + trajectoryNum + " trajectories, "
+                + removedPointNum + " removed points, " + characteristicPointNum + " characteristic points, " + segmentNum + " segments; "
+                + "dbscan: " + dbscanTimeNanos / 1e6 + " ms, " + distanceEvaluationNum + " distance evaluations, "
+                + corePointNum + " core points, " + clusterNum + " clusters, " + noiseNum + " noise, peak frontier "
+                + peakFrontierSize + "; representative: " + representativeTimeNanos / 1e6 + " ms, "
+                + representativeNum + " representative trajectories";
+    }
+}
@@ -0,0 +1,266 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.util.IntList;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
+import com.urbancomputing.trajectory.util.ParallelRange;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+
+/**
+ * eps neighborhoods of the out-of-core run of {@link TrajectoryDBScan}, written once in any segment order and read by
+ * segment id, values are buffered in memory and appended to a spill file whenever the buffer is full, the file is
+ * mapped chunk by chunk for reading
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+class SpilledNeighborhoods implements Closeable {
+    /**
+     * bytes of state per segment of the out-of-core run: label, frontier slot, neighborhood start and size, spatial
+     * order and position, the core bit set adds less than one byte
+     */
+    static final int STATE_BYTES_PER_SEGMENT = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES
+            + Integer.BYTES + Integer.BYTES + 1;
+    /**
+     * side of the spatial blocks in search radii and upper bound of their number
+     */
+    private static final int SPILL_BLOCK_FACTOR = 16;
+    private static final int MAX_SPILL_BLOCK_NUM = 1 << 20;
+    /**
+     * ints per mapped chunk of the spill file
+     */
+    private static final int CHUNK_SHIFT = 28;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final int MIN_BUFFER_BYTES = 1 << 12;
+
+    private final File directory;
+    /**
+     * position of the first neighbor and neighborhood size of each segment
+     */
+    private final LongBuffer starts;
+    private final IntBuffer sizes;
+    private final ByteBuffer buffer;
+    private File file;
+    private FileChannel channel;
+    private long valueNum;
+    /**
+     * segment pairs whose distance is evaluated while writing
+     */
+    private long evaluationNum;
+    /**
+     * values to read, the buffer itself if nothing is spilled
+     */
+    private IntBuffer[] chunks;
+
+    SpilledNeighborhoods(File directory, LongBuffer starts, IntBuffer sizes, long bufferBytes) {
+        this.directory = directory;
+        this.starts = starts;
+        this.sizes = sizes;
+        int capacity = (int) Math.min(Math.max(bufferBytes, MIN_BUFFER_BYTES), Integer.MAX_VALUE) & ~(Integer.BYTES - 1);
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * eps neighborhoods of all segments in spatially sorted blocks, segments close to each other are evaluated one
+     * after another so the store and the index are read block by block, batches of the order are evaluated on the
+     * pool if there is one
+     *
+     * @param collectors  new collector of the neighborhood of a segment into a buffer, one per thread
+     * @param bufferBytes bytes of neighborhoods buffered before spilling
+     * @param spillState  whether the offsets and the order are mapped to files in directory too
+     */
+    static SpilledNeighborhoods evaluate(SegmentAccess store, double eps, ForkJoinPool pool,
+                                         Function<IntList, NeighborhoodCollector> collectors, File directory,
+                                         long bufferBytes, boolean spillState) throws IOException {
+        int n = store.size();
+        SpilledNeighborhoods spilled = new SpilledNeighborhoods(directory, allocateLongs(directory, n, spillState),
+                allocateInts(directory, n, spillState), bufferBytes);
+        IntBuffer order = computeSpatialOrder(store, eps, directory, spillState);
+        IntList neighborhood = new IntList();
+        if (pool == null) {
+            NeighborhoodCollector collector = collectors.apply(neighborhood);
+            for (int k = 0; k < n; k++) {
+                int i = order.get(k);
+                neighborhood.clear();
+                collector.search(i);
+                spilled.write(i, neighborhood);
+            }
+            spilled.evaluationNum = collector.evaluationNum;
+        } else {
+            int rangeLength = TrajectoryDBScan.MIN_PARALLEL_RANGE_LENGTH;
+            int batchLength = rangeLength * pool.getParallelism();
+            int[][] batch = new int[batchLength][];
+            LongAdder evaluationNum = new LongAdder();
+            for (int first = 0; first < n; first += batchLength) {
+                int offset = first, length = Math.min(batchLength, n - first);
+                ParallelRange.forEach(pool, 0, length, rangeLength, (from, to) -> {
+                    IntList batchNeighborhood = new IntList();
+                    NeighborhoodCollector collector = collectors.apply(batchNeighborhood);
+                    for (int b = from; b < to; b++) {
+                        batchNeighborhood.clear();
+                        collector.search(order.get(offset + b));
+                        batch[b] = batchNeighborhood.toArray();
+                    }
+                    evaluationNum.add(collector.evaluationNum);
+                });
+                for (int b = 0; b < length; b++) {
+                    neighborhood.clear();
+                    neighborhood.addAll(batch[b]);
+                    spilled.write(order.get(first + b), neighborhood);
+                    batch[b] = null;
+                }
+            }
+            spilled.evaluationNum = evaluationNum.sum();
+        }
+        spilled.finish();
+        return spilled;
+    }
+
+    /**
+     * segments sorted by the block of their bounding box center, blocks in row-major order
+     */
+    private static IntBuffer computeSpatialOrder(SegmentAccess store, double eps, File directory, boolean spillState)
+            throws IOException {
+        int n = store.size();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, store.getMinX(i));
+            minY = Math.min(minY, store.getMinY(i));
+            maxX = Math.max(maxX, store.getMaxX(i));
+            maxY = Math.max(maxY, store.getMaxY(i));
+        }
+        double blockSize = Math.max(SPILL_BLOCK_FACTOR * computeSearchRadius(eps), Double.MIN_NORMAL);
+        while (((maxX - minX) / blockSize + 1) * ((maxY - minY) / blockSize + 1) > MAX_SPILL_BLOCK_NUM) {
+            blockSize *= 2;
+        }
+        int cols = n == 0 ? 1 : (int) ((maxX - minX) / blockSize) + 1;
+        int rows = n == 0 ? 1 : (int) ((maxY - minY) / blockSize) + 1;
+        int[] blockStart = new int[cols * rows + 1];
+        IntBuffer blocks = allocateInts(directory, n, spillState);
+        for (int i = 0; i < n; i++) {
+            int bx = (int) ((store.getMinX(i) + store.getMaxX(i) - 2 * minX) / 2 / blockSize);
+            int by = (int) ((store.getMinY(i) + store.getMaxY(i) - 2 * minY) / 2 / blockSize);
+            int block = Math.min(by, rows - 1) * cols + Math.min(bx, cols - 1);
+            blocks.put(i, block);
+            blockStart[block + 1]++;
+        }
+        for (int b = 1; b < blockStart.length; b++) {
+            blockStart[b] += blockStart[b - 1];
+        }
+        // the block of each segment is overwritten by the segment at its position in the order
+        IntBuffer order = blocks;
+        int[] cursor = Arrays.copyOf(blockStart, blockStart.length - 1);
+        IntBuffer positions = allocateInts(directory, n, spillState);
+        for (int i = 0; i < n; i++) {
+            positions.put(i, cursor[blocks.get(i)]++);
+        }
+        for (int i = 0; i < n; i++) {
+            order.put(positions.get(i), i);
+        }
+        return order;
+    }
+
+    /**
+     * whether the state of an out-of-core run over n segments together with its index exceeds half the budget, the
+     * state is mapped to files then while the index stays in memory
+     */
+    static boolean spillsState(int n, long indexBytes, long memoryBudget) {
+        return (long) n * STATE_BYTES_PER_SEGMENT + indexBytes > memoryBudget / 2;
+    }
+
+    /**
+     * state buffer of the out-of-core run, outside the java heap and mapped to a spill file in directory if spill
+     */
+    static IntBuffer allocateInts(File directory, int n, boolean spill) throws IOException {
+        return spill ? OffHeapBuffers.mapInts(directory, n) : OffHeapBuffers.allocateInts(n, true);
+    }
+
+    static LongBuffer allocateLongs(File directory, int n, boolean spill) throws IOException {
+        return spill ? OffHeapBuffers.mapLongs(directory, n) : OffHeapBuffers.allocateLongs(n, true);
+    }
+
+    void write(int i, IntList neighborhood) throws IOException {
+        starts.put(i, valueNum);
+        sizes.put(i, neighborhood.size());
+        for (int k = 0; k < neighborhood.size(); k++) {
+            if (!buffer.hasRemaining()) {
+                spill();
+            }
+            buffer.putInt(neighborhood.get(k));
+        }
+        valueNum += neighborhood.size();
+    }
+
+    /**
+     * end writing and prepare reading
+     */
+    void finish() throws IOException {
+        if (channel == null) {
+            buffer.flip();
+            chunks = new IntBuffer[]{buffer.asIntBuffer()};
+            return;
+        }
+        spill();
+        chunks = new IntBuffer[(int) ((valueNum + CHUNK_MASK) >>> CHUNK_SHIFT)];
+        for (int c = 0; c < chunks.length; c++) {
+            long first = (long) c << CHUNK_SHIFT;
+            long length = Math.min(CHUNK_MASK + 1, valueNum - first);
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, first * Integer.BYTES, length * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+
+    long getValueNumber() {
+        return valueNum;
+    }
+
+    long getEvaluationNumber() {
+        return evaluationNum;
+    }
+
+    void read(int i, IntList neighborhood) {
+        long start = starts.get(i);
+        for (long k = start, end = start + sizes.get(i); k < end; k++) {
+            neighborhood.add(chunks[(int) (k >>> CHUNK_SHIFT)].get((int) (k & CHUNK_MASK)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks = null;
+        if (channel != null) {
+            channel.close();
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        if (channel == null) {
+            file = File.createTempFile("neighborhoods", ".bin", directory);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
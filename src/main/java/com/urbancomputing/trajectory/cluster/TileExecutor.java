@@ -0,0 +1,26 @@
+package com.urbancomputing.trajectory.cluster;
+
+import java.io.File;
+
+/**
+ * runs {@link TileWorker} over tile files, implementations decide where the workers live
+ *
+ * @author yuzisheng
+ * @date 2021/11/27
+ */
+@FunctionalInterface
+public interface TileExecutor {
+    /**
+     * run one worker per input file writing the output file of the same position and return when all are written
+     */
+    void execute(File[] inputs, File[] outputs) throws Exception;
+
+    /**
+     * run the workers one after another inside this jvm
+     */
+    TileExecutor IN_PROCESS = (inputs, outputs) -> {
+        for (int t = 0; t < inputs.length; t++) {
+            TileWorker.run(inputs[t], outputs[t]);
+        }
+    };
+}
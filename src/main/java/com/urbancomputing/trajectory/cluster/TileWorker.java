@@ -0,0 +1,85 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.io.*;
+import java.nio.IntBuffer;
+
+/**
+ * clusters the segments of one tile, entry point of the worker processes of {@link TiledTrajectoryDBScan}
+ * <p>
+ * input file: eps (double), minNum (int), segment number (int) and x1, y1, x2, y2 (double) of every segment, output
+ * file: segment number (int) and the local cluster id (int), core flag (boolean), number (int) and ids (int) of the
+ * other local clusters with a core segment having it in its eps neighborhood of every segment
+ *
+ * @author yuzisheng
+ * @date 2021/11/27
+ */
+public class TileWorker {
+    /**
+     * trajectory ids are not needed to cluster segments
+     */
+    private static final String TILE_TID = "";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new Exception("usage: TileWorker <tile input file> <tile output file>");
+        }
+        run(new File(args[0]), new File(args[1]));
+    }
+
+    public static void run(File input, File output) throws Exception {
+        double eps;
+        int minNum;
+        SegmentStore store;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(input)))) {
+            eps = in.readDouble();
+            minNum = in.readInt();
+            int n = in.readInt();
+            store = new SegmentStore(n);
+            for (int i = 0; i < n; i++) {
+                store.add(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), TILE_TID);
+            }
+        }
+        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(store, eps, minNum);
+        // the neighborhoods are kept to find every local cluster reaching a border segment
+        int[][] neighborhoods = trajectoryDBScan.computeNeighborhoods();
+        trajectoryDBScan.setNeighborhoods(neighborhoods);
+        IntBuffer labels = trajectoryDBScan.clusterToBuffer();
+        IntList[] otherClusters = new IntList[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            if (trajectoryDBScan.isCore(i)) {
+                for (int j : neighborhoods[i]) {
+                    if (labels.get(j) != labels.get(i)) {
+                        if (otherClusters[j] == null) {
+                            otherClusters[j] = new IntList(2);
+                        }
+                        addOnce(otherClusters[j], labels.get(i));
+                    }
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                out.writeInt(labels.get(i));
+                out.writeBoolean(trajectoryDBScan.isCore(i));
+                IntList others = otherClusters[i];
+                out.writeInt(others == null ? 0 : others.size());
+                for (int k = 0; others != null && k < others.size(); k++) {
+                    out.writeInt(others.get(k));
+                }
+            }
+        }
+    }
+
+    private static void addOnce(IntList list, int value) {
+        for (int k = 0; k < list.size(); k++) {
+            if (list.get(k) == value) {
+                return;
+            }
+        }
+        list.add(value);
+    }
+}
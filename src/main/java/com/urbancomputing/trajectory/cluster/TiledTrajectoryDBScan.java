@@ -0,0 +1,340 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.index.GridSegmentIndex;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+
+/**
+ * segment cluster split over a grid of tiles which are clustered independently by {@link TileWorker}
+ * <p>
+ * every segment is owned by the tile holding the center of its bounding box, a tile also receives the halo of
+ * segments which may be within eps of its own segments so that the core segments it owns are exact, a tile reports
+ * every local cluster with a core segment having a segment in its eps neighborhood, cluster ids of different tiles
+ * sharing a core segment are merged by union find afterwards
+ * <p>
+ * labels are the same as the single run of {@link TrajectoryDBScan}, clusters are numbered by their first core segment,
+ * a border segment close to several clusters joins the last one whose first core segment has it in its eps
+ * neighborhood and otherwise the one with the smallest id
+ *
+ * @author yuzisheng
+ * @date 2021/11/27
+ */
+public class TiledTrajectoryDBScan {
+    /**
+     * segments to be clustered
+     */
+    SegmentStore store;
+    double eps;
+    int minNum;
+    /**
+     * number of tiles along each axis
+     */
+    int tileNumX, tileNumY;
+    /**
+     * runs the tile workers
+     */
+    TileExecutor executor;
+    /**
+     * directory for the tile files, visible to every worker, a temporary directory by default
+     */
+    File workDirectory;
+    /**
+     * cluster id of each segment, noise is -1
+     */
+    int[] labels;
+    int clusterNum;
+    int corePointNum;
+
+    private final int NOISE_ID = -1;
+
+    public TiledTrajectoryDBScan(SegmentStore store, double eps, int minNum, int tileNumX, int tileNumY, TileExecutor executor) {
+        this.store = store;
+        this.eps = eps;
+        this.minNum = minNum;
+        this.tileNumX = Math.max(tileNumX, 1);
+        this.tileNumY = Math.max(tileNumY, 1);
+        this.executor = executor;
+    }
+
+    public void setWorkDirectory(File workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    public int[] cluster() throws Exception {
+        int n = store.size();
+        int[] tiles = assignTiles();
+        int[][] tileSegments = splitTiles(tiles);
+        int tileNum = tileSegments.length;
+        int[] ownedNums = new int[tileNum];
+        for (int i = 0; i < n; i++) {
+            ownedNums[tiles[i]]++;
+        }
+
+        // run the workers
+        File directory = workDirectory != null ? workDirectory : Files.createTempDirectory("trajectory-tiles").toFile();
+        File[] inputs = new File[tileNum], outputs = new File[tileNum];
+        int[][] tileLabels = new int[tileNum][];
+        int[][][] tileOtherClusters = new int[tileNum][][];
+        boolean[] cores = new boolean[n];
+        try {
+            for (int t = 0; t < tileNum; t++) {
+                inputs[t] = new File(directory, "tile-" + t + ".in");
+                outputs[t] = new File(directory, "tile-" + t + ".out");
+                writeTile(inputs[t], tileSegments[t]);
+            }
+            executor.execute(inputs, outputs);
+            for (int t = 0; t < tileNum; t++) {
+                tileOtherClusters[t] = new int[tileSegments[t].length][];
+                tileLabels[t] = readTile(outputs[t], tileSegments[t], ownedNums[t], cores, tileOtherClusters[t]);
+            }
+        } finally {
+            for (int t = 0; t < tileNum; t++) {
+                if (inputs[t] != null) Files.deleteIfExists(inputs[t].toPath());
+                if (outputs[t] != null) Files.deleteIfExists(outputs[t].toPath());
+            }
+            if (workDirectory == null) {
+                Files.deleteIfExists(directory.toPath());
+            }
+        }
+
+        // local cluster c of tile t gets the global id base[t] + c before merging
+        int[] base = new int[tileNum + 1];
+        for (int t = 0; t < tileNum; t++) {
+            int localClusterNum = 0;
+            for (int label : tileLabels[t]) {
+                localClusterNum = Math.max(localClusterNum, label + 1);
+            }
+            base[t + 1] = base[t] + localClusterNum;
+        }
+        int[] ownerClusters = new int[n];
+        for (int t = 0; t < tileNum; t++) {
+            for (int k = 0; k < ownedNums[t]; k++) {
+                ownerClusters[tileSegments[t][k]] = tileLabels[t][k] >= 0 ? base[t] + tileLabels[t][k] : NOISE_ID;
+            }
+        }
+
+        // a core segment seen in clusters of any tile joins all of them with the cluster of its owner, a halo segment
+        // is often a local border reached by several local clusters which are all connected through it
+        int[] parent = new int[base[tileNum]];
+        for (int c = 0; c < parent.length; c++) {
+            parent[c] = c;
+        }
+        for (int t = 0; t < tileNum; t++) {
+            for (int k = ownedNums[t]; k < tileSegments[t].length; k++) {
+                int i = tileSegments[t][k];
+                if (cores[i]) {
+                    if (tileLabels[t][k] >= 0) {
+                        union(parent, base[t] + tileLabels[t][k], ownerClusters[i]);
+                    }
+                    for (int c : tileOtherClusters[t][k]) {
+                        union(parent, base[t] + c, ownerClusters[i]);
+                    }
+                }
+            }
+        }
+
+        // number merged clusters by their first core segment as the single run does, which expands a cluster from it
+        int[] clusterIds = new int[parent.length];
+        int[] firstCores = new int[parent.length];
+        Arrays.fill(clusterIds, -1);
+        clusterNum = 0;
+        corePointNum = 0;
+        labels = new int[n];
+        Arrays.fill(labels, NOISE_ID);
+        for (int i = 0; i < n; i++) {
+            if (cores[i]) {
+                int root = find(parent, ownerClusters[i]);
+                if (clusterIds[root] < 0) {
+                    firstCores[clusterNum] = i;
+                    clusterIds[root] = clusterNum++;
+                }
+                labels[i] = clusterIds[root];
+                corePointNum++;
+            }
+        }
+        // the single run labels the whole neighborhood of the first core segment of a cluster, other border segments
+        // keep the first cluster reaching them
+        int[] firstCoreLabels = new int[n];
+        Arrays.fill(firstCoreLabels, NOISE_ID);
+        for (int t = 0; t < tileNum; t++) {
+            for (int k = 0; k < tileSegments[t].length; k++) {
+                int i = tileSegments[t][k];
+                if (!cores[i] && tileLabels[t][k] >= 0) {
+                    joinBorder(labels, firstCoreLabels, firstCores, i, clusterIds[find(parent, base[t] + tileLabels[t][k])]);
+                    for (int c : tileOtherClusters[t][k]) {
+                        joinBorder(labels, firstCoreLabels, firstCores, i, clusterIds[find(parent, base[t] + c)]);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (firstCoreLabels[i] >= 0) {
+                labels[i] = firstCoreLabels[i];
+            }
+        }
+        return labels;
+    }
+
+    private void joinBorder(int[] labels, int[] firstCoreLabels, int[] firstCores, int i, int clusterId) {
+        if (labels[i] == NOISE_ID || clusterId < labels[i]) {
+            labels[i] = clusterId;
+        }
+        if (clusterId > firstCoreLabels[i] && computeSegmentToSegmentDistance(store, firstCores[clusterId], i) <= eps) {
+            firstCoreLabels[i] = clusterId;
+        }
+    }
+
+    public int getClusterNum() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return clusterNum;
+    }
+
+    public int getCorePointNumber() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return corePointNum;
+    }
+
+    /**
+     * cluster id of each segment after {@link #cluster()}, noise is -1
+     */
+    public int[] getLabels() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return labels;
+    }
+
+    /**
+     * segments of each tile, the owned segments first and then the halo
+     */
+    private int[][] splitTiles(int[] tiles) {
+        int n = store.size();
+        int tileNum = tileNumX * tileNumY;
+        IntList[] owned = new IntList[tileNum];
+        double[][] extents = new double[tileNum][];
+        for (int t = 0; t < tileNum; t++) {
+            owned[t] = new IntList();
+            extents[t] = new double[]{Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        }
+        for (int i = 0; i < n; i++) {
+            int t = tiles[i];
+            owned[t].add(i);
+            extents[t][0] = Math.min(extents[t][0], store.getMinX(i));
+            extents[t][1] = Math.min(extents[t][1], store.getMinY(i));
+            extents[t][2] = Math.max(extents[t][2], store.getMaxX(i));
+            extents[t][3] = Math.max(extents[t][3], store.getMaxY(i));
+        }
+        // the halo holds every segment within the search radius of the extent of the owned segments
+        double radius = computeSearchRadius(eps);
+        GridSegmentIndex index = new GridSegmentIndex(store, radius);
+        int[] marks = new int[n];
+        int[][] tileSegments = new int[tileNum][];
+        for (int t = 0; t < tileNum; t++) {
+            IntList segments = owned[t];
+            if (!segments.isEmpty()) {
+                int mark = t + 1;
+                for (int k = 0; k < segments.size(); k++) {
+                    marks[segments.get(k)] = mark;
+                }
+                index.query(extents[t][0] - radius, extents[t][1] - radius, extents[t][2] + radius, extents[t][3] + radius, j -> {
+                    if (marks[j] != mark) segments.add(j);
+                });
+            }
+            tileSegments[t] = segments.toArray();
+        }
+        return tileSegments;
+    }
+
+    /**
+     * tile of each segment by the center of its bounding box
+     */
+    private int[] assignTiles() {
+        int n = store.size();
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, centerX(i));
+            minY = Math.min(minY, centerY(i));
+            maxX = Math.max(maxX, centerX(i));
+            maxY = Math.max(maxY, centerY(i));
+        }
+        int[] tiles = new int[n];
+        for (int i = 0; i < n; i++) {
+            int tx = maxX > minX ? (int) ((centerX(i) - minX) / (maxX - minX) * tileNumX) : 0;
+            int ty = maxY > minY ? (int) ((centerY(i) - minY) / (maxY - minY) * tileNumY) : 0;
+            tiles[i] = Math.min(ty, tileNumY - 1) * tileNumX + Math.min(tx, tileNumX - 1);
+        }
+        return tiles;
+    }
+
+    private double centerX(int i) {
+        return (store.getMinX(i) + store.getMaxX(i)) / 2;
+    }
+
+    private double centerY(int i) {
+        return (store.getMinY(i) + store.getMaxY(i)) / 2;
+    }
+
+    private void writeTile(File input, int[] segments) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(input)))) {
+            out.writeDouble(eps);
+            out.writeInt(minNum);
+            out.writeInt(segments.length);
+            for (int i : segments) {
+                out.writeDouble(store.getX1(i));
+                out.writeDouble(store.getY1(i));
+                out.writeDouble(store.getX2(i));
+                out.writeDouble(store.getY2(i));
+            }
+        }
+    }
+
+    /**
+     * read the local labels and the other local clusters reaching each segment of a tile and the core flags of the
+     * segments it owns
+     */
+    private int[] readTile(File output, int[] segments, int ownedNum, boolean[] cores, int[][] otherClusters) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(output)))) {
+            if (in.readInt() != segments.length) {
+                throw new Exception("tile output " + output + " does not match its input");
+            }
+            int[] tileLabels = new int[segments.length];
+            for (int k = 0; k < segments.length; k++) {
+                tileLabels[k] = in.readInt();
+                boolean core = in.readBoolean();
+                if (k < ownedNum) {
+                    cores[segments[k]] = core;
+                }
+                otherClusters[k] = new int[in.readInt()];
+                for (int c = 0; c < otherClusters[k].length; c++) {
+                    otherClusters[k][c] = in.readInt();
+                }
+            }
+            return tileLabels;
+        }
+    }
+
+    private static int find(int[] parent, int c) {
+        while (parent[c] != c) {
+            parent[c] = parent[parent[c]];
+            c = parent[c];
+        }
+        return c;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        parent[Math.max(a, b)] = Math.min(a, b);
+    }
+}
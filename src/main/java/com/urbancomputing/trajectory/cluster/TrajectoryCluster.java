@@ -1,10 +1,14 @@
 package com.urbancomputing.trajectory.cluster;
 
 
-import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.io.StageCheckpoint;
+import com.urbancomputing.trajectory.model.SegmentStore;
 import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * trajectory cluster
@@ -18,6 +22,9 @@ public class TrajectoryCluster {
     // trajectory partition parameters
     double partitionMinSegmentLength;
 
+    // radius of the stay point and jitter compression ahead of the partition, 0 to skip it
+    double compressionRadius;
+
     // segments dbscan cluster parameters
     double dbscanEps;
     int dbscanMinNum;
@@ -27,6 +34,20 @@ public class TrajectoryCluster {
     int repMinTrajNumForCluster;
     int repMinSegmentNumForSweep;
 
+    // pool for the parallel steps, null to run sequentially
+    ForkJoinPool pool;
+
+    // tiles of the dbscan step, null executor for the single run
+    int tileNumX, tileNumY;
+    TileExecutor tileExecutor;
+
+    // directory of the stage checkpoints, null to run every stage
+    File checkpointDirectory;
+
+    // metrics of the last run and the listener receiving them after every stage
+    PipelineMetrics metrics;
+    PipelineListener listener;
+
     /**
      * trajectory cluster
      *
@@ -54,26 +75,147 @@ public class TrajectoryCluster {
         this.repMinSegmentNumForSweep = repMinSegmentNumForSweep;
     }
 
+    /**
+     * run the parallel steps on the given pool, results are identical to the sequential run
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * collapse stay points and jitter within the radius before partitioning, see {@link TrajectoryCompression}
+     */
+    public void setCompressionRadius(double compressionRadius) {
+        this.compressionRadius = compressionRadius;
+    }
+
+    /**
+     * cluster segments over a grid of tiles run by the executor, see {@link TiledTrajectoryDBScan}
+     */
+    public void setTiling(int tileNumX, int tileNumY, TileExecutor tileExecutor) {
+        this.tileNumX = tileNumX;
+        this.tileNumY = tileNumY;
+        this.tileExecutor = tileExecutor;
+    }
+
+    /**
+     * save the segments of the partition and the labels of dbscan to checkpoint files in the directory, keyed by the
+     * fingerprint of the trajectories and the parameters of the stage, a later run with the same input and parameters
+     * loads them and skips the stage, see {@link StageCheckpoint}
+     */
+    public void setCheckpointDirectory(File checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    public void setListener(PipelineListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * metrics of the last {@link #doCluster()}
+     */
+    public PipelineMetrics getMetrics() throws Exception {
+        if (metrics == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return metrics;
+    }
+
     /**
      * do trajectory cluster
      *
      * @return list of representative spatial line
      */
     public ArrayList<Trajectory> doCluster() throws Exception {
+        metrics = new PipelineMetrics();
+
         // first step: trajectory partition
-        TrajectoryPartition trajectoryPartition = new TrajectoryPartition(trajs, partitionMinSegmentLength);
-        ArrayList<Segment> segments = trajectoryPartition.partition();
+        long startTime = System.nanoTime();
+        StageCheckpoint checkpoint = checkpointDirectory == null ? null : new StageCheckpoint(checkpointDirectory, trajs);
+        String partitionParameters = "partitionMinSegmentLength=" + partitionMinSegmentLength
+                + ";compressionRadius=" + compressionRadius;
+        StageCheckpoint.PartitionResult partitionResult = checkpoint == null ? null : checkpoint.loadPartition(partitionParameters);
+        SegmentStore segments;
+        if (partitionResult != null) {
+            segments = partitionResult.getSegments();
+            metrics.characteristicPointNum = partitionResult.getCharacteristicPointNumber();
+            metrics.removedPointNum = -1;
+            metrics.partitionLoaded = true;
+        } else {
+            ArrayList<Trajectory> partitionTrajs = trajs;
+            if (compressionRadius > 0) {
+                TrajectoryCompression trajectoryCompression = new TrajectoryCompression(trajs, compressionRadius);
+                trajectoryCompression.setPool(pool);
+                partitionTrajs = trajectoryCompression.compress();
+                metrics.removedPointNum = trajectoryCompression.getRemovedPointNumber();
+            }
+            TrajectoryPartition trajectoryPartition = new TrajectoryPartition(partitionTrajs, partitionMinSegmentLength);
+            trajectoryPartition.setPool(pool);
+            segments = trajectoryPartition.partitionToStore();
+            metrics.characteristicPointNum = trajectoryPartition.getCharacteristicPointNumber();
+            if (checkpoint != null) {
+                checkpoint.savePartition(partitionParameters, segments, metrics.characteristicPointNum);
+            }
+        }
+        metrics.partitionTimeNanos = System.nanoTime() - startTime;
+        metrics.trajectoryNum = trajs.size();
+        metrics.segmentNum = segments.size();
+        notifyListener(PipelineListener.Stage.PARTITION);
 
         // second step: trajectory cluster including noise
-        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, dbscanEps, dbscanMinNum);
-        ArrayList<Integer> clusterIds = trajectoryDBScan.cluster();
+        startTime = System.nanoTime();
+        int[] clusterIds;
+        int clusterNum;
+        // the tiled run may assign a border segment to another cluster than the single run or a run of other tiles
+        String dbscanParameters = partitionParameters + ";dbscanEps=" + dbscanEps + ";dbscanMinNum=" + dbscanMinNum
+                + (tileExecutor == null ? ";tiled=false" : ";tiled=true;tileNumX=" + tileNumX + ";tileNumY=" + tileNumY);
+        StageCheckpoint.DBScanResult dbscanResult = checkpoint == null ? null : checkpoint.loadDBScan(dbscanParameters);
+        if (dbscanResult != null) {
+            clusterIds = dbscanResult.getLabels();
+            clusterNum = dbscanResult.getClusterNum();
+            metrics.corePointNum = dbscanResult.getCorePointNumber();
+            metrics.dbscanLoaded = true;
+        } else if (tileExecutor != null) {
+            TiledTrajectoryDBScan tiledTrajectoryDBScan = new TiledTrajectoryDBScan(segments, dbscanEps, dbscanMinNum,
+                    tileNumX, tileNumY, tileExecutor);
+            clusterIds = tiledTrajectoryDBScan.cluster();
+            clusterNum = tiledTrajectoryDBScan.getClusterNum();
+            metrics.corePointNum = tiledTrajectoryDBScan.getCorePointNumber();
+        } else {
+            TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, dbscanEps, dbscanMinNum);
+            trajectoryDBScan.setPool(pool);
+            clusterIds = OffHeapBuffers.toArray(trajectoryDBScan.clusterToBuffer());
+            clusterNum = trajectoryDBScan.getClusterNum();
+            metrics.corePointNum = trajectoryDBScan.getCorePointNumber();
+            metrics.distanceEvaluationNum = trajectoryDBScan.getDistanceEvaluationNumber();
+            metrics.peakFrontierSize = trajectoryDBScan.getPeakFrontierSize();
+        }
+        if (checkpoint != null && dbscanResult == null) {
+            checkpoint.saveDBScan(dbscanParameters, clusterIds, clusterNum, metrics.corePointNum);
+        }
+        metrics.dbscanTimeNanos = System.nanoTime() - startTime;
+        metrics.clusterNum = clusterNum;
+        for (int clusterId : clusterIds) {
+            if (clusterId < 0) metrics.noiseNum++;
+        }
+        notifyListener(PipelineListener.Stage.DBSCAN);
 
         // third step: compute representative trajectory
-        int clusterNum = trajectoryDBScan.getClusterNum();
+        startTime = System.nanoTime();
         TrajectoryRepresentative trajectoryRepresentative = new TrajectoryRepresentative(segments, clusterIds, clusterNum,
                 repMinSmoothingLength, repMinTrajNumForCluster, repMinSegmentNumForSweep);
+        trajectoryRepresentative.setPool(pool);
+        ArrayList<Trajectory> representativeTrajs = trajectoryRepresentative.compute();
+        metrics.representativeTimeNanos = System.nanoTime() - startTime;
+        metrics.representativeNum = representativeTrajs.size();
+        notifyListener(PipelineListener.Stage.REPRESENTATIVE);
 
-        return trajectoryRepresentative.compute();
+        return representativeTrajs;
     }
-}
 
+    private void notifyListener(PipelineListener.Stage stage) {
+        if (listener != null) {
+            listener.onStageFinished(stage, metrics);
+        }
+    }
+}
\ No newline at end of file
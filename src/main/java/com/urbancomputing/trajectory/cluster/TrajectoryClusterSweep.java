@@ -0,0 +1,225 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * trajectory cluster over every combination of parameter grids, running only the stages whose parameters change
+ * <p>
+ * partitions are kept per min segment length and dbscan labels per (min segment length, eps, min number), eps
+ * neighborhoods are evaluated once per (min segment length, eps) and shared by all min numbers, kept outputs are
+ * reused by later sweeps of the same instance
+ *
+ * @author yuzisheng
+ * @date 2021/11/30
+ */
+public class TrajectoryClusterSweep {
+    /**
+     * receives the result of one parameter combination
+     */
+    @FunctionalInterface
+    public interface ResultConsumer {
+        void accept(Result result) throws Exception;
+    }
+
+    /**
+     * parameters and representative trajectories of one combination
+     */
+    public static class Result {
+        double partitionMinSegmentLength;
+        double dbscanEps;
+        int dbscanMinNum;
+        double repMinSmoothingLength;
+        int repMinTrajNumForCluster;
+        int repMinSegmentNumForSweep;
+        int clusterNum;
+        ArrayList<Trajectory> representativeTrajs;
+
+        public double getPartitionMinSegmentLength() {
+            return partitionMinSegmentLength;
+        }
+
+        public double getDbscanEps() {
+            return dbscanEps;
+        }
+
+        public int getDbscanMinNum() {
+            return dbscanMinNum;
+        }
+
+        public double getRepMinSmoothingLength() {
+            return repMinSmoothingLength;
+        }
+
+        public int getRepMinTrajNumForCluster() {
+            return repMinTrajNumForCluster;
+        }
+
+        public int getRepMinSegmentNumForSweep() {
+            return repMinSegmentNumForSweep;
+        }
+
+        /**
+         * number of dbscan clusters, including those without a representative trajectory
+         */
+        public int getClusterNum() {
+            return clusterNum;
+        }
+
+        public ArrayList<Trajectory> getRepresentativeTrajs() {
+            return representativeTrajs;
+        }
+    }
+
+    ArrayList<Trajectory> trajs;
+
+    // parameter grids, see TrajectoryCluster
+    double[] partitionMinSegmentLengths;
+    double[] dbscanEpses;
+    int[] dbscanMinNums;
+    double[] repMinSmoothingLengths;
+    int[] repMinTrajNumsForCluster;
+    int[] repMinSegmentNumsForSweep;
+
+    // pool for the parallel steps, null to run sequentially
+    ForkJoinPool pool;
+
+    /**
+     * partition output per min segment length
+     */
+    private final HashMap<Double, SegmentStore> partitions = new HashMap<>();
+    /**
+     * dbscan output per (min segment length, eps, min number)
+     */
+    private final HashMap<List<Double>, DBScanOutput> dbscanOutputs = new HashMap<>();
+    private int partitionRunNum, neighborhoodRunNum, dbscanRunNum;
+
+    public TrajectoryClusterSweep(ArrayList<Trajectory> trajs,
+                                  double[] partitionMinSegmentLengths,
+                                  double[] dbscanEpses,
+                                  int[] dbscanMinNums,
+                                  double[] repMinSmoothingLengths,
+                                  int[] repMinTrajNumsForCluster,
+                                  int[] repMinSegmentNumsForSweep) {
+        this.trajs = trajs;
+        this.partitionMinSegmentLengths = partitionMinSegmentLengths;
+        this.dbscanEpses = dbscanEpses;
+        this.dbscanMinNums = dbscanMinNums;
+        this.repMinSmoothingLengths = repMinSmoothingLengths;
+        this.repMinTrajNumsForCluster = repMinTrajNumsForCluster;
+        this.repMinSegmentNumsForSweep = repMinSegmentNumsForSweep;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * results of all combinations, see {@link #sweep(ResultConsumer)} for the order
+     */
+    public ArrayList<Result> sweep() throws Exception {
+        ArrayList<Result> results = new ArrayList<>();
+        sweep(results::add);
+        return results;
+    }
+
+    /**
+     * hand the result of every combination to the consumer as soon as it is computed, the grids are iterated in
+     * constructor order with the last grid varying fastest
+     */
+    public void sweep(ResultConsumer consumer) throws Exception {
+        for (double partitionMinSegmentLength : partitionMinSegmentLengths) {
+            SegmentStore segments = partitions.get(partitionMinSegmentLength);
+            if (segments == null) {
+                TrajectoryPartition trajectoryPartition = new TrajectoryPartition(trajs, partitionMinSegmentLength);
+                trajectoryPartition.setPool(pool);
+                segments = trajectoryPartition.partitionToStore();
+                partitions.put(partitionMinSegmentLength, segments);
+                partitionRunNum++;
+            }
+            for (double dbscanEps : dbscanEpses) {
+                // neighborhoods only depend on eps, they are evaluated once the first min number misses the cache
+                int[][] neighborhoods = null;
+                for (int dbscanMinNum : dbscanMinNums) {
+                    List<Double> key = Arrays.asList(partitionMinSegmentLength, dbscanEps, (double) dbscanMinNum);
+                    DBScanOutput dbscanOutput = dbscanOutputs.get(key);
+                    if (dbscanOutput == null) {
+                        if (neighborhoods == null) {
+                            TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, dbscanEps, dbscanMinNum);
+                            trajectoryDBScan.setPool(pool);
+                            neighborhoods = trajectoryDBScan.computeNeighborhoods();
+                            neighborhoodRunNum++;
+                        }
+                        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, dbscanEps, dbscanMinNum);
+                        trajectoryDBScan.setNeighborhoods(neighborhoods);
+                        int[] labels = OffHeapBuffers.toArray(trajectoryDBScan.clusterToBuffer());
+                        dbscanOutput = new DBScanOutput(labels, trajectoryDBScan.getClusterNum());
+                        dbscanOutputs.put(key, dbscanOutput);
+                        dbscanRunNum++;
+                    }
+                    for (double repMinSmoothingLength : repMinSmoothingLengths) {
+                        for (int repMinTrajNumForCluster : repMinTrajNumsForCluster) {
+                            for (int repMinSegmentNumForSweep : repMinSegmentNumsForSweep) {
+                                TrajectoryRepresentative trajectoryRepresentative = new TrajectoryRepresentative(segments,
+                                        dbscanOutput.labels, dbscanOutput.clusterNum, repMinSmoothingLength,
+                                        repMinTrajNumForCluster, repMinSegmentNumForSweep);
+                                trajectoryRepresentative.setPool(pool);
+                                Result result = new Result();
+                                result.partitionMinSegmentLength = partitionMinSegmentLength;
+                                result.dbscanEps = dbscanEps;
+                                result.dbscanMinNum = dbscanMinNum;
+                                result.repMinSmoothingLength = repMinSmoothingLength;
+                                result.repMinTrajNumForCluster = repMinTrajNumForCluster;
+                                result.repMinSegmentNumForSweep = repMinSegmentNumForSweep;
+                                result.clusterNum = dbscanOutput.clusterNum;
+                                result.representativeTrajs = trajectoryRepresentative.compute();
+                                consumer.accept(result);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * number of partition runs so far, one per distinct min segment length
+     */
+    public int getPartitionRunNumber() {
+        return partitionRunNum;
+    }
+
+    /**
+     * number of eps neighborhood evaluations so far
+     */
+    public int getNeighborhoodRunNumber() {
+        return neighborhoodRunNum;
+    }
+
+    /**
+     * number of dbscan runs so far, one per distinct (min segment length, eps, min number)
+     */
+    public int getDBScanRunNumber() {
+        return dbscanRunNum;
+    }
+}
+
+/**
+ * labels of one dbscan run
+ */
+class DBScanOutput {
+    final int[] labels;
+    final int clusterNum;
+
+    DBScanOutput(int[] labels, int clusterNum) {
+        this.labels = labels;
+        this.clusterNum = clusterNum;
+    }
+}
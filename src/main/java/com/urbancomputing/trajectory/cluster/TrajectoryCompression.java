@@ -0,0 +1,115 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.ArrayTrajectory;
+import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.ParallelRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * stay point and jitter compression ahead of {@link TrajectoryPartition}
+ * <p>
+ * a run of consecutive points within the radius of its first point is collapsed into its centroid in one pass over
+ * the points, so a stay or a sub-radius jitter becomes a single point and every raw point is within twice the radius
+ * of the point replacing it
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class TrajectoryCompression {
+    /**
+     * raw trajectories
+     */
+    private final ArrayList<Trajectory> trajs;
+    /**
+     * radius of a run of points collapsed into one
+     */
+    private final double radius;
+    /**
+     * pool to compress trajectories concurrently, null for the sequential run
+     */
+    private ForkJoinPool pool;
+    /**
+     * number of points removed by the last run
+     */
+    private long removedPointNum;
+
+    public TrajectoryCompression(ArrayList<Trajectory> trajs, double radius) {
+        this.trajs = trajs;
+        this.radius = radius;
+    }
+
+    /**
+     * compress trajectories concurrently on the pool, results are identical to the sequential run
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * compressed trajectories in the order of the raw ones with the same ids
+     */
+    public ArrayList<Trajectory> compress() {
+        Trajectory[] compressedTrajs = new Trajectory[trajs.size()];
+        ParallelRange.RangeConsumer rangeConsumer = (from, to) -> {
+            for (int t = from; t < to; t++) {
+                compressedTrajs[t] = compress(trajs.get(t), radius);
+            }
+        };
+        if (pool != null) {
+            ParallelRange.forEach(pool, 0, trajs.size(), 1, rangeConsumer);
+        } else {
+            rangeConsumer.accept(0, trajs.size());
+        }
+        removedPointNum = 0;
+        for (int t = 0; t < trajs.size(); t++) {
+            removedPointNum += trajs.get(t).getPointNumber() - compressedTrajs[t].getPointNumber();
+        }
+        return new ArrayList<>(Arrays.asList(compressedTrajs));
+    }
+
+    /**
+     * number of points removed by the last run
+     */
+    public long getRemovedPointNumber() {
+        return removedPointNum;
+    }
+
+    /**
+     * compress one trajectory, a trajectory collapsing into a single point keeps its first and last point so that it
+     * can still be partitioned
+     */
+    public static Trajectory compress(Trajectory traj, double radius) {
+        int pointNumber = traj.getPointNumber();
+        if (pointNumber < 2) {
+            return traj;
+        }
+        double squaredRadius = radius * radius;
+        double[] xs = new double[pointNumber], ys = new double[pointNumber];
+        int compressedNumber = 0;
+        for (int i = 0, j; i < pointNumber; i = j) {
+            double anchorX = traj.getX(i), anchorY = traj.getY(i);
+            double sumX = anchorX, sumY = anchorY;
+            for (j = i + 1; j < pointNumber; j++) {
+                double x = traj.getX(j), y = traj.getY(j);
+                if ((x - anchorX) * (x - anchorX) + (y - anchorY) * (y - anchorY) > squaredRadius) break;
+                sumX += x;
+                sumY += y;
+            }
+            // a single point is kept exactly
+            xs[compressedNumber] = j - i == 1 ? anchorX : sumX / (j - i);
+            ys[compressedNumber] = j - i == 1 ? anchorY : sumY / (j - i);
+            compressedNumber++;
+        }
+        if (compressedNumber == pointNumber) {
+            return traj;
+        }
+        if (compressedNumber == 1) {
+            return new ArrayTrajectory(traj.getTid(), new double[]{traj.getX(0), traj.getX(pointNumber - 1)},
+                    new double[]{traj.getY(0), traj.getY(pointNumber - 1)});
+        }
+        return new ArrayTrajectory(traj.getTid(), Arrays.copyOf(xs, compressedNumber), Arrays.copyOf(ys, compressedNumber));
+    }
+}
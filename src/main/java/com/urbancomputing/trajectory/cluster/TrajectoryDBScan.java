@@ -1,10 +1,26 @@
 package com.urbancomputing.trajectory.cluster;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.urbancomputing.trajectory.index.GridSegmentIndex;
+import com.urbancomputing.trajectory.index.LshCalibration;
+import com.urbancomputing.trajectory.index.LshSegmentIndex;
+import com.urbancomputing.trajectory.index.SegmentIndex;
 import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.util.IntList;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
+import com.urbancomputing.trajectory.util.ParallelRange;
 
-import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
 
 /**
  * segment cluster
@@ -16,7 +32,7 @@ public class TrajectoryDBScan {
     /**
      * segments to be clustered
      */
-    List<Segment> segments;
+    SegmentAccess store;
     /**
      * eps
      */
@@ -26,9 +42,93 @@ public class TrajectoryDBScan {
      */
     int minNum;
     /**
-     * cluster ids
+     * index to find candidates of eps neighborhood, BruteForceSegmentIndex is the reference full scan
      */
-    ArrayList<Integer> clusterIds;
+    SegmentIndex index;
+    /**
+     * pool to evaluate eps neighborhoods in parallel, null for the sequential run
+     */
+    ForkJoinPool pool;
+    /**
+     * whether distances stop as soon as they are known to exceed eps
+     */
+    boolean boundedDistance;
+    /**
+     * share of the segment pairs within eps the approximate neighborhoods should hold, 0 for exact neighborhoods
+     */
+    double targetRecall;
+    /**
+     * segments sampled to choose the hash tables and to estimate the label agreement of the approximate run
+     */
+    int approximationSampleSize;
+    /**
+     * hash tables of the approximate neighborhoods and the sample they are chosen on
+     */
+    private LshSegmentIndex lshIndex;
+    private LshCalibration calibration;
+    /**
+     * share of the pairs within eps of the held-out half of the sample found by the approximate neighborhoods
+     */
+    double estimatedRecall = 1.0;
+    /**
+     * share of the sampled segments labelled as by the exact run
+     */
+    double estimatedLabelAgreement = 1.0;
+    /**
+     * whether labels, core flags, frontier and the default index are kept outside the java heap
+     */
+    boolean offHeap;
+    /**
+     * directory of the spill files of the out-of-core run, null for the in-memory run
+     */
+    File spillDirectory;
+    /**
+     * bytes of buffered neighborhoods and of clustering state the out-of-core run keeps in memory
+     */
+    long memoryBudget;
+    /**
+     * eps neighborhoods evaluated in advance by the parallel run
+     */
+    private int[][] neighborhoodCache;
+    /**
+     * eps neighborhoods evaluated in advance by the out-of-core run
+     */
+    private SpilledNeighborhoods spilledNeighborhoods;
+    /**
+     * neighbor ids written by the last out-of-core run, buffered or spilled
+     */
+    long spilledNeighborNum;
+    /**
+     * cluster id of each segment
+     */
+    IntBuffer labels;
+    /**
+     * bit set of the segments whose eps neighborhood holds at least minNum segments and their number
+     */
+    LongBuffer cores;
+    int coreNum;
+    /**
+     * number of clusters found by the last run
+     */
+    int clusterNum;
+    /**
+     * segment pairs whose distance is evaluated by the last run
+     */
+    long distanceEvaluationNum;
+    /**
+     * largest number of segments waiting in the frontier during the last run
+     */
+    int peakFrontierSize;
+    /**
+     * frontier of the cluster being expanded, every segment enters it at most once per cluster because it is only
+     * added while its label turns into the current cluster id, so the label array doubles as the visited set
+     */
+    private IntBuffer frontier;
+    /**
+     * reusable neighborhood buffer and collector of the sequential run
+     */
+    private final IntList neighborhood = new IntList();
+    private NeighborhoodCollector collector;
     /**
      * unclassified point id
      */
@@ -37,75 +137,363 @@ public class TrajectoryDBScan {
      * noise point id
      */
     private final int NOISE_ID = -1;
+    /**
+     * number of segments evaluated by one parallel task
+     */
+    static final int MIN_PARALLEL_RANGE_LENGTH = 64;
+    private static final long APPROXIMATION_SEED = 0L;
 
     public TrajectoryDBScan(List<Segment> segments, Double eps, int minNum) {
-        this.segments = segments;
+        this(SegmentStore.of(segments), eps, minNum, null);
+    }
+
+    public TrajectoryDBScan(SegmentAccess store, double eps, int minNum) {
+        this(store, eps, minNum, null);
+    }
+
+    public TrajectoryDBScan(SegmentAccess store, double eps, int minNum, SegmentIndex index) {
+        this.store = store;
         this.eps = eps;
         this.minNum = minNum;
+        this.index = index;
+    }
+
+    /**
+     * evaluate the eps neighborhoods of all segments on the pool before expanding clusters, labels are identical to
+     * the sequential run at the cost of keeping every neighborhood in memory during the clustering, or in the spill
+     * files of an out-of-core run
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * evaluate distances with {@link TrajectoryDistance#computeBoundedSegmentToSegmentDistance(SegmentAccess, int, int, double)}
+     * which gives up on a pair once it is known to be farther than eps, labels are identical to the full evaluation
+     */
+    public void setBoundedDistance(boolean boundedDistance) {
+        this.boundedDistance = boundedDistance;
+    }
+
+    /**
+     * find eps neighborhoods through locality sensitive hash tables holding about targetRecall of the segment pairs
+     * within eps instead of the grid index, some neighbors are missed for far fewer distance evaluations
+     * <p>
+     * the tables are chosen on the exact neighborhoods of half of sampleSize segments and the recall is estimated on
+     * the other half, the share of segments labelled as by the exact run is estimated on all of them, the exact
+     * neighborhoods are evaluated in one pass over the store for the sample and one more for the sampled neighbors
+     * whose core flag decides an agreement, these distances are counted in the distance evaluation number
+     */
+    public void setApproximation(double targetRecall, int sampleSize) {
+        this.targetRecall = targetRecall;
+        this.approximationSampleSize = sampleSize;
+        this.lshIndex = null;
     }
 
+    /**
+     * keep labels, core flags, the frontier and the default grid index in direct buffers so the heap does not grow with
+     * the number of segments, read the labels through {@link #getLabelBuffer()}, the neighborhoods of a parallel run
+     * stay on the heap
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * cluster data larger than the memory, eps neighborhoods are evaluated once in spatially sorted blocks and buffered
+     * in half of memoryBudget bytes, spilling to a file in spillDirectory whenever the buffer is full, labels, core
+     * flags, the frontier and the neighborhood offsets live in the other half or, if they do not fit there next to the
+     * cells of the grid index, in files mapped from spillDirectory, labels are identical to the in-memory run
+     * <p>
+     * segments are read through the store, pass an {@link com.urbancomputing.trajectory.model.OffHeapSegmentStore}
+     * backed by a file for segments beyond the memory, spill files are deleted by the end of the run
+     * <p>
+     * with a pool the neighborhoods are evaluated in parallel a batch of segments at a time and spilled in the same
+     * order, only the neighborhoods of one batch are held on the heap
+     */
+    public void setOutOfCore(File spillDirectory, long memoryBudget) {
+        this.spillDirectory = spillDirectory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * cluster and box the labels into a list, kept for existing callers, use {@link #clusterToBuffer()} instead
+     *
+     * @return cluster id of each segment, noise is -1
+     */
     public ArrayList<Integer> cluster() {
-        // initialize items with unclassified
-        clusterIds = new ArrayList<>(Collections.nCopies(segments.size(), UNCLASSIFIED_ID));
+        IntBuffer buffer = clusterToBuffer();
+        ArrayList<Integer> clusterIds = new ArrayList<>(buffer.capacity());
+        for (int i = 0; i < buffer.capacity(); i++) {
+            clusterIds.add(buffer.get(i));
+        }
+        return clusterIds;
+    }
+
+    /**
+     * cluster without boxing the labels
+     *
+     * @return cluster id of each segment, noise is -1
+     */
+    public IntBuffer clusterToBuffer() {
+        int n = store.size();
+        distanceEvaluationNum = 0;
+        prepareIndex(offHeap || spillDirectory != null);
+        long indexBytes = lshIndex != null ? lshIndex.getMemoryBytes()
+                : index instanceof GridSegmentIndex ? ((GridSegmentIndex) index).getMemoryBytes() : 0L;
+        boolean spillState = spillDirectory != null && SpilledNeighborhoods.spillsState(n, indexBytes, memoryBudget);
+        try {
+            // initialize items with unclassified
+            labels = spillDirectory != null ? SpilledNeighborhoods.allocateInts(spillDirectory, n, spillState)
+                    : OffHeapBuffers.allocateInts(n, offHeap);
+            for (int i = 0; i < n; i++) {
+                labels.put(i, UNCLASSIFIED_ID);
+            }
+            int wordNum = (n + 63) >>> 6;
+            cores = spillDirectory != null ? SpilledNeighborhoods.allocateLongs(spillDirectory, wordNum, spillState)
+                    : OffHeapBuffers.allocateLongs(wordNum, offHeap);
+            frontier = spillDirectory != null ? SpilledNeighborhoods.allocateInts(spillDirectory, n, spillState)
+                    : OffHeapBuffers.allocateInts(n, offHeap);
+            coreNum = 0;
+            collector = newCollector(neighborhood);
+            peakFrontierSize = 0;
+            // the neighborhoods come from a previous run, the spill files, the parallel run or the collector
+            boolean sharedNeighborhoods = neighborhoodCache != null;
+            if (!sharedNeighborhoods && spillDirectory != null) {
+                spilledNeighborhoods = SpilledNeighborhoods.evaluate(store, eps, pool, this::newCollector,
+                        spillDirectory, memoryBudget / 2, spillState);
+                spilledNeighborNum = spilledNeighborhoods.getValueNumber();
+                distanceEvaluationNum += spilledNeighborhoods.getEvaluationNumber();
+            } else if (!sharedNeighborhoods && pool != null) {
+                neighborhoodCache = computeNeighborhoods();
+            }
+            clusterNum = expandAll(n);
+            if (!sharedNeighborhoods) {
+                neighborhoodCache = null;
+            }
+            if (spilledNeighborhoods != null) {
+                spilledNeighborhoods.close();
+                spilledNeighborhoods = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        frontier = null;
+        if (lshIndex != null) {
+            estimatedLabelAgreement = calibration.estimateLabelAgreement(labels, this::hasCoreFlag, minNum);
+            distanceEvaluationNum += calibration.getDistanceEvaluationNumber();
+        }
+        return labels;
+    }
+
+    private int expandAll(int n) {
         // dbscan
         int currentId = 0;
-        for (int i = 0; i < segments.size(); i++) {
-            if (clusterIds.get(i) == UNCLASSIFIED_ID && expandDense(i, currentId)) {
+        for (int i = 0; i < n; i++) {
+            if (labels.get(i) == UNCLASSIFIED_ID && expandDense(i, currentId)) {
                 currentId++;
             }
         }
-        return clusterIds;
+        distanceEvaluationNum += collector.evaluationNum;
+        return currentId;
+    }
+
+    /**
+     * eps neighborhoods of all segments, evaluated on the pool if there is one
+     */
+    int[][] computeNeighborhoods() {
+        int n = store.size();
+        distanceEvaluationNum = 0;
+        prepareIndex(offHeap);
+        int[][] neighborhoods = new int[n][];
+        LongAdder evaluationNum = new LongAdder();
+        ParallelRange.RangeConsumer rangeConsumer = (from, to) -> {
+            IntList neighborhood = new IntList();
+            NeighborhoodCollector collector = newCollector(neighborhood);
+            for (int i = from; i < to; i++) {
+                neighborhood.clear();
+                collector.search(i);
+                neighborhoods[i] = neighborhood.toArray();
+            }
+            evaluationNum.add(collector.evaluationNum);
+        };
+        if (pool != null) {
+            ParallelRange.forEach(pool, 0, n, MIN_PARALLEL_RANGE_LENGTH, rangeConsumer);
+        } else {
+            rangeConsumer.accept(0, n);
+        }
+        distanceEvaluationNum += evaluationNum.sum();
+        return neighborhoods;
+    }
+
+    /**
+     * hash tables chosen on a sample for the approximate run, a grid index unless one is given otherwise
+     */
+    private void prepareIndex(boolean offHeapIndex) {
+        if (targetRecall > 0.0) {
+            if (lshIndex == null) {
+                calibration = new LshCalibration(store, eps, approximationSampleSize, APPROXIMATION_SEED);
+                lshIndex = calibration.buildIndex(targetRecall);
+                estimatedRecall = calibration.getEstimatedRecall();
+                distanceEvaluationNum += calibration.getDistanceEvaluationNumber();
+            }
+        } else if (index == null) {
+            index = new GridSegmentIndex(store, computeSearchRadius(eps), offHeapIndex);
+        }
+    }
+
+    private NeighborhoodCollector newCollector(IntList neighborhood) {
+        return new NeighborhoodCollector(store, eps, index, lshIndex, boundedDistance, neighborhood);
+    }
+
+    /**
+     * reuse the eps neighborhoods of {@link #computeNeighborhoods()} from a run over the same segments and eps, e.g.
+     * with another minNum, no distance is evaluated by the clustering then
+     */
+    void setNeighborhoods(int[][] neighborhoods) {
+        this.neighborhoodCache = neighborhoods;
     }
 
     public int getClusterNum() throws Exception {
-        if (clusterIds == null) {
+        if (labels == null) {
             throw new Exception("clustering is not running yet");
         }
-        if (clusterIds.contains(NOISE_ID)) {
-            return (new HashSet<>(clusterIds)).size() - 1;
-        } else {
-            return (new HashSet<>(clusterIds)).size();
+        return clusterNum;
+    }
+
+    /**
+     * cluster id of each segment after {@link #cluster()}, noise is -1, copied to the heap in the off-heap run
+     */
+    public int[] getLabels() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
         }
+        return OffHeapBuffers.toArray(labels);
     }
 
-    private boolean expandDense(int segmentIndex, int currentId) {
-        Set<Integer> neighborhoods1 = new HashSet<>();
-        Set<Integer> neighborhoods2 = new HashSet<>();
+    /**
+     * cluster id of each segment after {@link #cluster()} without copying, noise is -1
+     */
+    public IntBuffer getLabelBuffer() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return labels;
+    }
+
+    public int getCorePointNumber() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return coreNum;
+    }
+
+    public long getDistanceEvaluationNumber() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return distanceEvaluationNum;
+    }
+
+    public int getPeakFrontierSize() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return peakFrontierSize;
+    }
+
+    /**
+     * whether a segment is a core segment after {@link #cluster()}
+     */
+    public boolean isCore(int i) throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return hasCoreFlag(i);
+    }
+
+    /**
+     * share of the segment pairs within eps found in the approximate run, 1 for the exact run
+     */
+    public double getEstimatedRecall() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return estimatedRecall;
+    }
+
+    /**
+     * share of the segments labelled as by the exact run, 1 for the exact run
+     * <p>
+     * a sampled core segment agrees if it shares its cluster with all core segments of its exact neighborhood, a
+     * sampled border segment if it is in a cluster and a sampled noise segment if it stays noise
+     */
+    public double getEstimatedLabelAgreement() throws Exception {
+        if (labels == null) {
+            throw new Exception("clustering is not running yet");
+        }
+        return estimatedLabelAgreement;
+    }
 
-        computeEpsNeighborhood(segmentIndex, neighborhoods1);
-        if (neighborhoods1.size() < minNum) {
-            clusterIds.set(segmentIndex, NOISE_ID);
+    private boolean expandDense(int segmentIndex, int currentId) {
+        computeEpsNeighborhood(segmentIndex, neighborhood);
+        if (neighborhood.size() < minNum) {
+            labels.put(segmentIndex, NOISE_ID);
             return false;
         }
-        for (int seed : neighborhoods1) {
-            clusterIds.set(seed, currentId);
-        }
-        neighborhoods1.remove(segmentIndex);
-        int currIndex;
-        while (!neighborhoods1.isEmpty()) {
-            currIndex = (int) neighborhoods1.toArray()[0];
-            computeEpsNeighborhood(currIndex, neighborhoods2);
-            if (neighborhoods2.size() >= minNum) {
-                for (int seed : neighborhoods2) {
-                    int tempId = clusterIds.get(seed);
+        setCore(segmentIndex);
+        int head = 0, tail = 0;
+        for (int k = 0; k < neighborhood.size(); k++) {
+            int seed = neighborhood.get(k);
+            labels.put(seed, currentId);
+            if (seed != segmentIndex) {
+                frontier.put(tail++, seed);
+            }
+        }
+        peakFrontierSize = Math.max(peakFrontierSize, tail);
+        while (head < tail) {
+            int currIndex = frontier.get(head++);
+            computeEpsNeighborhood(currIndex, neighborhood);
+            if (neighborhood.size() >= minNum) {
+                setCore(currIndex);
+                for (int k = 0; k < neighborhood.size(); k++) {
+                    int seed = neighborhood.get(k);
+                    int tempId = labels.get(seed);
                     if (tempId == UNCLASSIFIED_ID || tempId == NOISE_ID) {
                         if (tempId == UNCLASSIFIED_ID) {
-                            neighborhoods1.add(seed);
+                            frontier.put(tail++, seed);
                         }
-                        clusterIds.set(seed, currentId);
+                        labels.put(seed, currentId);
                     }
                 }
+                peakFrontierSize = Math.max(peakFrontierSize, tail - head);
             }
-            neighborhoods1.remove(currIndex);
         }
         return true;
     }
 
-    private void computeEpsNeighborhood(int i, Set<Integer> neighborhoods) {
-        neighborhoods.clear();
-        for (int j = 0; j < segments.size(); j++) {
-            double distance = computeSegmentToSegmentDistance(segments.get(i), segments.get(j));
-            if (distance <= eps) neighborhoods.add(j);
+    private boolean hasCoreFlag(int i) {
+        return (cores.get(i >>> 6) & 1L << i) != 0L;
+    }
+
+    private void setCore(int i) {
+        long word = cores.get(i >>> 6);
+        if ((word & 1L << i) == 0L) {
+            cores.put(i >>> 6, word | 1L << i);
+            coreNum++;
+        }
+    }
+
+    private void computeEpsNeighborhood(int i, IntList neighborhood) {
+        neighborhood.clear();
+        if (neighborhoodCache != null) {
+            neighborhood.addAll(neighborhoodCache[i]);
+            return;
+        }
+        if (spilledNeighborhoods != null) {
+            spilledNeighborhoods.read(i, neighborhood);
+            return;
         }
+        collector.search(i);
     }
 }
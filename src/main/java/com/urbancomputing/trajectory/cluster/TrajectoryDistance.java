@@ -2,9 +2,10 @@ package com.urbancomputing.trajectory.cluster;
 
 import com.urbancomputing.trajectory.model.Point;
 import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentAccess;
 
 /**
- * distance util
+ * distance util, all methods are stateless and safe to call from concurrent threads
  *
  * @author yuzisheng
  * @date 2021/11/5
@@ -15,12 +16,18 @@ public class TrajectoryDistance {
      */
     static final int POINT_DIM = 2;
     /**
-     * some temp variables
+     * gap(box(s1), box(s2)) <= SEARCH_RADIUS_FACTOR * computeSegmentToSegmentDistance(s1, s2)
+     * <p>
+     * let d1, d2 be the perpendicular distances and l1, l2 the parallel distances of the endpoints of the shorter
+     * segment, the distance from endpoint k to the longer segment is at most dk + lk, and
+     * max(d1, d2) <= (d1^2 + d2^2) / (d1 + d2) / (2 * sqrt(2) - 2), so the endpoint with min(l1, l2) is within
+     * (1 + sqrt(2)) / 2 times the sum of perpendicular and parallel distance from the longer segment
      */
-    static double coefficient;
-    static double[] vector1 = new double[2];
-    static double[] vector2 = new double[2];
-    static Point projectionPoint = new Point();
+    static final double SEARCH_RADIUS_FACTOR = (1.0 + Math.sqrt(2.0)) / 2.0;
+    /**
+     * relative slack of the bounding box gap test to absorb rounding of the segment distance
+     */
+    private static final double ROUNDING_SLACK = 1e-9;
 
     public static double log2(double x) {
         return Math.log(x) / Math.log(2);
@@ -60,99 +67,217 @@ public class TrajectoryDistance {
      * compute perpendicular distance between two segments
      */
     public static double computePerpendicularDistance(Segment s1, Segment s2) {
-        if (s1.length() < s2.length()) {
-            Segment temp = s1;
-            s1 = s2;
-            s2 = temp;
+        return computePerpendicularDistance(s1.getCoord(0), s1.getCoord(1), s1.getCoord(2), s1.getCoord(3), s1.length(),
+                s2.getCoord(0), s2.getCoord(1), s2.getCoord(2), s2.getCoord(3), s2.length());
+    }
+
+    /**
+     * compute perpendicular distance between segments (x1, y1)-(x2, y2) and (u1, v1)-(u2, v2) of known lengths
+     */
+    static double computePerpendicularDistance(double x1, double y1, double x2, double y2, double length1,
+                                               double u1, double v1, double u2, double v2, double length2) {
+        if (length1 < length2) {
+            return computePerpendicularDistance(u1, v1, u2, v2, length2, x1, y1, x2, y2, length1);
         }
-        double distance1 = computePointToSegmentDistance(s2.getStartPoint(), s1);
-        double distance2 = computePointToSegmentDistance(s2.getEndPoint(), s1);
+        double vectorX = x2 - x1, vectorY = y2 - y1;
+        double squaredLength = vectorX * vectorX + vectorY * vectorY;
+        double coefficient1 = ((u1 - x1) * vectorX + (v1 - y1) * vectorY) / squaredLength;
+        double coefficient2 = ((u2 - x1) * vectorX + (v2 - y1) * vectorY) / squaredLength;
+        double distanceX1 = u1 - (x1 + coefficient1 * vectorX), distanceY1 = v1 - (y1 + coefficient1 * vectorY);
+        double distanceX2 = u2 - (x1 + coefficient2 * vectorX), distanceY2 = v2 - (y1 + coefficient2 * vectorY);
+        double distance1 = Math.sqrt(distanceX1 * distanceX1 + distanceY1 * distanceY1);
+        double distance2 = Math.sqrt(distanceX2 * distanceX2 + distanceY2 * distanceY2);
         if (distance1 == 0.0 && distance2 == 0.0) {
             return 0.0;
         }
-        return (Math.pow(distance1, 2) + Math.pow(distance2, 2)) / (distance1 + distance2);
+        return (distance1 * distance1 + distance2 * distance2) / (distance1 + distance2);
     }
 
     /**
      * compute angle distance between two segments
      */
     public static double computeAngleDistance(Segment s1, Segment s2) {
-        for (int i = 0; i < POINT_DIM; i++) {
-            vector1[i] = s1.getCoord(i + POINT_DIM) - s1.getCoord(i);
-            vector2[i] = s2.getCoord(i + POINT_DIM) - s2.getCoord(i);
-        }
-        double vectorLength1 = computeVectorLength(vector1);
-        double vectorLength2 = computeVectorLength(vector2);
-        if (vectorLength1 == 0.0 || vectorLength2 == 0.0) return 0.0;
+        return computeAngleDistance(s1.getCoord(0), s1.getCoord(1), s1.getCoord(2), s1.getCoord(3), s1.length(),
+                s2.getCoord(0), s2.getCoord(1), s2.getCoord(2), s2.getCoord(3), s2.length());
+    }
+
+    /**
+     * compute angle distance between segments (x1, y1)-(x2, y2) and (u1, v1)-(u2, v2) of known lengths
+     */
+    static double computeAngleDistance(double x1, double y1, double x2, double y2, double length1,
+                                       double u1, double v1, double u2, double v2, double length2) {
+        if (length1 == 0.0 || length2 == 0.0) return 0.0;
 
-        double innerProduct = computeInnerProduct(vector1, vector2);
-        double cosTheta = innerProduct / (vectorLength1 * vectorLength2);
+        double innerProduct = (x2 - x1) * (u2 - u1) + (y2 - y1) * (v2 - v1);
+        double cosTheta = innerProduct / (length1 * length2);
         if (cosTheta > 1.0) cosTheta = 1.0;
         if (cosTheta < -1.0) cosTheta = -1.0;
-        double sinTheta = Math.sqrt(1 - Math.pow(cosTheta, 2));
-        return (vectorLength2 * sinTheta);
+        double sinTheta = Math.sqrt(1 - cosTheta * cosTheta);
+        return (length2 * sinTheta);
     }
 
     /**
      * compute distance between two segments
      */
     public static double computeSegmentToSegmentDistance(Segment s1, Segment s2) {
-        double perDistance;
-        double parDistance;
-        double angleDistance;
-
         double segmentLength1 = s1.length();
         double segmentLength2 = s2.length();
         if (segmentLength1 < segmentLength2) {
-            Segment temp = s1;
-            s1 = s2;
-            s2 = temp;
+            return computeSegmentToSegmentDistance(s2.getCoord(0), s2.getCoord(1), s2.getCoord(2), s2.getCoord(3), segmentLength2,
+                    s1.getCoord(0), s1.getCoord(1), s1.getCoord(2), s1.getCoord(3), segmentLength1);
+        }
+        return computeSegmentToSegmentDistance(s1.getCoord(0), s1.getCoord(1), s1.getCoord(2), s1.getCoord(3), segmentLength1,
+                s2.getCoord(0), s2.getCoord(1), s2.getCoord(2), s2.getCoord(3), segmentLength2);
+    }
+
+    /**
+     * compute distance between segments i and j of a store, equal to the distance of the materialized segments
+     */
+    public static double computeSegmentToSegmentDistance(SegmentAccess store, int i, int j) {
+        if (store.getLength(i) < store.getLength(j)) {
+            int temp = i;
+            i = j;
+            j = temp;
         }
+        return computeSegmentToSegmentDistance(store.getX1(i), store.getY1(i), store.getX2(i), store.getY2(i), store.getLength(i),
+                store.getX1(j), store.getY1(j), store.getX2(j), store.getY2(j), store.getLength(j));
+    }
+
+    /**
+     * compute distance between the longer segment (x1, y1)-(x2, y2) and the shorter segment (u1, v1)-(u2, v2)
+     */
+    static double computeSegmentToSegmentDistance(double x1, double y1, double x2, double y2, double length1,
+                                                  double u1, double v1, double u2, double v2, double length2) {
+        return computeBoundedSegmentToSegmentDistance(x1, y1, x2, y2, length1, u1, v1, u2, v2, length2,
+                Double.POSITIVE_INFINITY);
+    }
 
-        double perDistance1, perDistance2;
-        double parDistance1, parDistance2;
-        perDistance1 = computePointToSegmentDistance(s2.getStartPoint(), s1);
-        if (coefficient < 0.5) {
-            parDistance1 = computePointToPointDistance(s1.getStartPoint(), projectionPoint);
-        } else {
-            parDistance1 = computePointToPointDistance(s1.getEndPoint(), projectionPoint);
+    /**
+     * distance between segments i and j of a store if it is at most threshold, otherwise some value above threshold
+     * <p>
+     * the bounding box gap is tested first, then the angle, perpendicular and parallel distances are added up and the
+     * evaluation stops once the partial sum exceeds threshold, rounding is monotone so a partial sum never exceeds the
+     * full one and a distance within threshold is bitwise equal to {@link #computeSegmentToSegmentDistance(SegmentAccess, int, int)}
+     */
+    public static double computeBoundedSegmentToSegmentDistance(SegmentAccess store, int i, int j, double threshold) {
+        double radius = computeSearchRadius(threshold);
+        double gap = Math.max(Math.max(store.getMinX(j) - store.getMaxX(i), store.getMinX(i) - store.getMaxX(j)),
+                Math.max(store.getMinY(j) - store.getMaxY(i), store.getMinY(i) - store.getMaxY(j)));
+        if (gap > radius) {
+            // the slack is only worked out for pairs beyond the radius
+            double maxAbsCoord = Math.max(Math.max(Math.abs(store.getMinX(i)), Math.abs(store.getMaxX(i))),
+                    Math.max(Math.abs(store.getMinY(i)), Math.abs(store.getMaxY(i))));
+            maxAbsCoord = Math.max(maxAbsCoord, Math.max(Math.max(Math.abs(store.getMinX(j)), Math.abs(store.getMaxX(j))),
+                    Math.max(Math.abs(store.getMinY(j)), Math.abs(store.getMaxY(j)))));
+            if (gap > radius + ROUNDING_SLACK * (1.0 + maxAbsCoord)) {
+                return Double.POSITIVE_INFINITY;
+            }
         }
-        perDistance2 = computePointToSegmentDistance(s2.getEndPoint(), s1);
-        if (coefficient < 0.5) {
-            parDistance2 = computePointToPointDistance(s1.getStartPoint(), projectionPoint);
-        } else {
-            parDistance2 = computePointToPointDistance(s1.getEndPoint(), projectionPoint);
+        if (store.getLength(i) < store.getLength(j)) {
+            int temp = i;
+            i = j;
+            j = temp;
         }
+        return computeBoundedSegmentToSegmentDistance(store.getX1(i), store.getY1(i), store.getX2(i), store.getY2(i), store.getLength(i),
+                store.getX1(j), store.getY1(j), store.getX2(j), store.getY2(j), store.getLength(j), threshold);
+    }
+
+    /**
+     * bounded distance between the longer segment (x1, y1)-(x2, y2) and the shorter segment (u1, v1)-(u2, v2)
+     */
+    static double computeBoundedSegmentToSegmentDistance(double x1, double y1, double x2, double y2, double length1,
+                                                         double u1, double v1, double u2, double v2, double length2,
+                                                         double threshold) {
+        // angle distance: ||s2|| * sin(theta)
+        double angleDistance = computeAngleDistance(x1, y1, x2, y2, length1, u1, v1, u2, v2, length2);
+        if (angleDistance > threshold) {
+            return angleDistance;
+        }
+
+        double vectorX1 = x2 - x1, vectorY1 = y2 - y1;
+        double squaredLength1 = vectorX1 * vectorX1 + vectorY1 * vectorY1;
+
+        // project both endpoints of the shorter segment onto the line of the longer one
+        double coefficient1 = ((u1 - x1) * vectorX1 + (v1 - y1) * vectorY1) / squaredLength1;
+        double projectionX1 = x1 + coefficient1 * vectorX1, projectionY1 = y1 + coefficient1 * vectorY1;
+        double coefficient2 = ((u2 - x1) * vectorX1 + (v2 - y1) * vectorY1) / squaredLength1;
+        double projectionX2 = x1 + coefficient2 * vectorX1, projectionY2 = y1 + coefficient2 * vectorY1;
+
+        double perDistance1 = Math.sqrt((u1 - projectionX1) * (u1 - projectionX1) + (v1 - projectionY1) * (v1 - projectionY1));
+        double perDistance2 = Math.sqrt((u2 - projectionX2) * (u2 - projectionX2) + (v2 - projectionY2) * (v2 - projectionY2));
 
         // perpendicular distance: (d1^2 + d2^2) / (d1 + d2)
+        double perDistance = 0.0;
         if (!(perDistance1 == 0.0 && perDistance2 == 0.0)) {
-            perDistance = ((Math.pow(perDistance1, 2) + Math.pow(perDistance2, 2)) / (perDistance1 + perDistance2));
-        } else {
-            perDistance = 0.0;
+            perDistance = (perDistance1 * perDistance1 + perDistance2 * perDistance2) / (perDistance1 + perDistance2);
+        }
+        if (perDistance + angleDistance > threshold) {
+            return perDistance + angleDistance;
         }
 
-        // parallel distance: min(d1, d2)
-        parDistance = Math.min(parDistance1, parDistance2);
+        double parDistance1 = coefficient1 < 0.5
+                ? Math.sqrt((x1 - projectionX1) * (x1 - projectionX1) + (y1 - projectionY1) * (y1 - projectionY1))
+                : Math.sqrt((x2 - projectionX1) * (x2 - projectionX1) + (y2 - projectionY1) * (y2 - projectionY1));
+        double parDistance2 = coefficient2 < 0.5
+                ? Math.sqrt((x1 - projectionX2) * (x1 - projectionX2) + (y1 - projectionY2) * (y1 - projectionY2))
+                : Math.sqrt((x2 - projectionX2) * (x2 - projectionX2) + (y2 - projectionY2) * (y2 - projectionY2));
 
-        // Angle Distance
-        angleDistance = computeAngleDistance(s1, s2);
+        // parallel distance: min(d1, d2)
+        double parDistance = Math.min(parDistance1, parDistance2);
         return (perDistance + parDistance + angleDistance);
     }
 
     /**
-     * compute distance from point to segment
+     * distances from segment (qx1, qy1)-(qx2, qy2) to the segments from..to of coordinate columns into
+     * distances[0..to - from), each bitwise equal to {@link #computeSegmentToSegmentDistance(SegmentAccess, int, int)}
+     * of the pair with the query first
+     * <p>
+     * branches of the pairwise distance are replaced by selects and every step is computed for every segment, so the
+     * loop body is straight line code over primitive arrays
      */
-    private static double computePointToSegmentDistance(Point p, Segment s) {
-        Point p1 = s.getStartPoint();
-        Point p2 = s.getEndPoint();
-        for (int i = 0; i < POINT_DIM; i++) {
-            vector1[i] = p.getCoord(i) - p1.getCoord(i);
-            vector2[i] = p2.getCoord(i) - p1.getCoord(i);
-        }
-        coefficient = computeInnerProduct(vector1, vector2) / computeInnerProduct(vector2, vector2);
-        for (int i = 0; i < POINT_DIM; i++) {
-            projectionPoint.setCoord(i, p1.getCoord(i) + coefficient * vector2[i]);
+    public static void computeSegmentToSegmentDistances(double qx1, double qy1, double qx2, double qy2, double qLength,
+                                                        double[] x1s, double[] y1s, double[] x2s, double[] y2s,
+                                                        double[] lengths, int from, int to, double[] distances) {
+        for (int k = from; k < to; k++) {
+            // the query is the longer segment unless it is strictly shorter
+            boolean swap = qLength < lengths[k];
+            double x1 = swap ? x1s[k] : qx1, y1 = swap ? y1s[k] : qy1;
+            double x2 = swap ? x2s[k] : qx2, y2 = swap ? y2s[k] : qy2;
+            double u1 = swap ? qx1 : x1s[k], v1 = swap ? qy1 : y1s[k];
+            double u2 = swap ? qx2 : x2s[k], v2 = swap ? qy2 : y2s[k];
+            double length1 = swap ? lengths[k] : qLength, length2 = swap ? qLength : lengths[k];
+
+            // angle distance, see computeAngleDistance
+            double innerProduct = (x2 - x1) * (u2 - u1) + (y2 - y1) * (v2 - v1);
+            double cosTheta = innerProduct / (length1 * length2);
+            cosTheta = cosTheta > 1.0 ? 1.0 : cosTheta;
+            cosTheta = cosTheta < -1.0 ? -1.0 : cosTheta;
+            double angleDistance = length1 == 0.0 || length2 == 0.0 ? 0.0 : length2 * Math.sqrt(1 - cosTheta * cosTheta);
+
+            // projections, perpendicular and parallel distances, see computeBoundedSegmentToSegmentDistance
+            double vectorX1 = x2 - x1, vectorY1 = y2 - y1;
+            double squaredLength1 = vectorX1 * vectorX1 + vectorY1 * vectorY1;
+            double coefficient1 = ((u1 - x1) * vectorX1 + (v1 - y1) * vectorY1) / squaredLength1;
+            double projectionX1 = x1 + coefficient1 * vectorX1, projectionY1 = y1 + coefficient1 * vectorY1;
+            double coefficient2 = ((u2 - x1) * vectorX1 + (v2 - y1) * vectorY1) / squaredLength1;
+            double projectionX2 = x1 + coefficient2 * vectorX1, projectionY2 = y1 + coefficient2 * vectorY1;
+            double perDistance1 = Math.sqrt((u1 - projectionX1) * (u1 - projectionX1) + (v1 - projectionY1) * (v1 - projectionY1));
+            double perDistance2 = Math.sqrt((u2 - projectionX2) * (u2 - projectionX2) + (v2 - projectionY2) * (v2 - projectionY2));
+            double perDistance = perDistance1 == 0.0 && perDistance2 == 0.0 ? 0.0
+                    : (perDistance1 * perDistance1 + perDistance2 * perDistance2) / (perDistance1 + perDistance2);
+            double endX1 = coefficient1 < 0.5 ? x1 : x2, endY1 = coefficient1 < 0.5 ? y1 : y2;
+            double endX2 = coefficient2 < 0.5 ? x1 : x2, endY2 = coefficient2 < 0.5 ? y1 : y2;
+            double parDistance1 = Math.sqrt((endX1 - projectionX1) * (endX1 - projectionX1) + (endY1 - projectionY1) * (endY1 - projectionY1));
+            double parDistance2 = Math.sqrt((endX2 - projectionX2) * (endX2 - projectionX2) + (endY2 - projectionY2) * (endY2 - projectionY2));
+            double parDistance = Math.min(parDistance1, parDistance2);
+            distances[k - from] = perDistance + parDistance + angleDistance;
         }
-        return computePointToPointDistance(p, projectionPoint);
+    }
+
+    /**
+     * compute the radius around a segment bounding box which contains every segment within eps of it
+     */
+    public static double computeSearchRadius(double eps) {
+        return SEARCH_RADIUS_FACTOR * eps;
     }
 }
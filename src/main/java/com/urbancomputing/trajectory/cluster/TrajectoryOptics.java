@@ -0,0 +1,232 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.index.GridSegmentIndex;
+import com.urbancomputing.trajectory.index.SegmentIndex;
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.util.IndexedMinHeap;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+
+/**
+ * optics ordering of segments up to a maximum eps, from which the dbscan labels of any eps up to the maximum are
+ * extracted in linear time
+ * <p>
+ * besides the ordering every segment keeps its lowest reachability from any core segment and that core segment, so
+ * extracted labels have the same core segments, noise and cluster numbering as {@link TrajectoryDBScan} with that eps,
+ * a border segment close to several clusters may join another one of them
+ *
+ * @author yuzisheng
+ * @date 2021/12/1
+ */
+public class TrajectoryOptics {
+    /**
+     * segments to be ordered
+     */
+    SegmentAccess store;
+    /**
+     * largest eps of the extractions
+     */
+    double maxEps;
+    int minNum;
+    SegmentIndex index;
+    /**
+     * segments in optics order
+     */
+    int[] ordering;
+    /**
+     * reachability of each segment when it is ordered, infinite if no core segment within max eps ordered before it
+     */
+    double[] reachabilities;
+    /**
+     * distance to the minNum-th closest segment including itself, infinite if fewer within max eps
+     */
+    double[] coreDistances;
+    /**
+     * lowest reachability of each segment from any core segment and that core segment
+     */
+    double[] bestReachabilities;
+    int[] bestCores;
+    /**
+     * labels and cluster number of the last extraction
+     */
+    int[] labels;
+    int clusterNum;
+
+    private final int NOISE_ID = -1;
+
+    public TrajectoryOptics(SegmentAccess store, double maxEps, int minNum) {
+        this(store, maxEps, minNum, null);
+    }
+
+    public TrajectoryOptics(SegmentAccess store, double maxEps, int minNum, SegmentIndex index) {
+        this.store = store;
+        this.maxEps = maxEps;
+        this.minNum = minNum;
+        this.index = index;
+    }
+
+    /**
+     * order all segments, every eps neighborhood within max eps is evaluated once
+     */
+    public int[] computeOrdering() {
+        int n = store.size();
+        if (index == null) {
+            index = new GridSegmentIndex(store, computeSearchRadius(maxEps));
+        }
+        ordering = new int[n];
+        reachabilities = new double[n];
+        Arrays.fill(reachabilities, Double.POSITIVE_INFINITY);
+        coreDistances = new double[n];
+        bestReachabilities = new double[n];
+        Arrays.fill(bestReachabilities, Double.POSITIVE_INFINITY);
+        bestCores = new int[n];
+        Arrays.fill(bestCores, -1);
+
+        BitSet processed = new BitSet(n);
+        IndexedMinHeap seeds = new IndexedMinHeap(reachabilities);
+        IntList neighbors = new IntList();
+        double[][] distances = {new double[16]};
+        double radius = computeSearchRadius(maxEps);
+        int orderNum = 0;
+        for (int start = 0; start < n; start++) {
+            if (processed.get(start)) {
+                continue;
+            }
+            int next = start;
+            while (next >= 0) {
+                int q = next;
+                processed.set(q);
+                ordering[orderNum++] = q;
+
+                // eps neighborhood within max eps and the core distance of q
+                neighbors.clear();
+                index.query(store.getMinX(q) - radius, store.getMinY(q) - radius,
+                        store.getMaxX(q) + radius, store.getMaxY(q) + radius, j -> {
+                            double distance = computeSegmentToSegmentDistance(store, q, j);
+                            if (distance <= maxEps) {
+                                if (neighbors.size() == distances[0].length) {
+                                    distances[0] = Arrays.copyOf(distances[0], 2 * neighbors.size());
+                                }
+                                distances[0][neighbors.size()] = distance;
+                                neighbors.add(j);
+                            }
+                        });
+                coreDistances[q] = computeCoreDistance(distances[0], neighbors.size());
+
+                if (coreDistances[q] < Double.POSITIVE_INFINITY) {
+                    for (int k = 0; k < neighbors.size(); k++) {
+                        int p = neighbors.get(k);
+                        double reachability = Math.max(coreDistances[q], distances[0][k]);
+                        if (reachability < bestReachabilities[p]) {
+                            bestReachabilities[p] = reachability;
+                            bestCores[p] = q;
+                        }
+                        if (!processed.get(p)) {
+                            if (!seeds.contains(p)) {
+                                seeds.insert(p, reachability);
+                            } else if (reachability < reachabilities[p]) {
+                                seeds.decrease(p, reachability);
+                            }
+                        }
+                    }
+                }
+                next = seeds.isEmpty() ? -1 : seeds.poll();
+            }
+        }
+        return ordering;
+    }
+
+    /**
+     * dbscan labels for an eps up to max eps in linear time
+     *
+     * @return cluster id of each segment, noise is -1
+     */
+    public int[] extractLabels(double eps) throws Exception {
+        if (ordering == null) {
+            throw new Exception("ordering is not computed yet");
+        }
+        if (eps > maxEps) {
+            throw new Exception("eps " + eps + " exceeds the max eps " + maxEps + " of the ordering");
+        }
+        int n = ordering.length;
+        labels = new int[n];
+        Arrays.fill(labels, NOISE_ID);
+        // core segments in optics order, a cluster starts at each core segment unreachable within eps
+        int orderClusterNum = 0;
+        for (int q : ordering) {
+            if (coreDistances[q] <= eps) {
+                if (reachabilities[q] > eps) {
+                    orderClusterNum++;
+                }
+                labels[q] = orderClusterNum - 1;
+            }
+        }
+        // number clusters by their first core segment as dbscan does
+        int[] clusterIds = new int[orderClusterNum];
+        Arrays.fill(clusterIds, -1);
+        clusterNum = 0;
+        for (int i = 0; i < n; i++) {
+            if (coreDistances[i] <= eps && clusterIds[labels[i]] < 0) {
+                clusterIds[labels[i]] = clusterNum++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (coreDistances[i] <= eps) {
+                labels[i] = clusterIds[labels[i]];
+            }
+        }
+        // border segments join the cluster of the core segment reaching them best
+        for (int i = 0; i < n; i++) {
+            if (coreDistances[i] > eps && bestReachabilities[i] <= eps) {
+                labels[i] = labels[bestCores[i]];
+            }
+        }
+        return labels;
+    }
+
+    public int getClusterNum() throws Exception {
+        if (labels == null) {
+            throw new Exception("labels are not extracted yet");
+        }
+        return clusterNum;
+    }
+
+    /**
+     * cluster id of each segment after the last {@link #extractLabels(double)}, noise is -1
+     */
+    public int[] getLabels() throws Exception {
+        if (labels == null) {
+            throw new Exception("labels are not extracted yet");
+        }
+        return labels;
+    }
+
+    public int[] getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * reachability of each segment by segment id, follow {@link #getOrdering()} to plot the reachability curve
+     */
+    public double[] getReachabilities() {
+        return reachabilities;
+    }
+
+    public double[] getCoreDistances() {
+        return coreDistances;
+    }
+
+    private double computeCoreDistance(double[] distances, int size) {
+        if (size < minNum) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double[] sorted = Arrays.copyOf(distances, size);
+        Arrays.sort(sorted);
+        return sorted[minNum - 1];
+    }
+}
@@ -0,0 +1,284 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.index.GridSegmentIndex;
+import com.urbancomputing.trajectory.index.SegmentIndex;
+import com.urbancomputing.trajectory.model.SegmentAccess;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.log2;
+
+/**
+ * estimate dbscan eps and min number by the entropy heuristic of traclus over a random sample of segments
+ * <p>
+ * the eps minimizing the entropy of the eps neighborhood sizes is suggested together with min number = average
+ * neighborhood size + 2, the neighborhoods of a sampled segment for all candidate eps come from one index query at the
+ * largest eps, the entropy of a sample differs from the full one by about log2(n / sampleSize) at every eps so the
+ * minimum is kept, confidence bounds come from bootstrap resamples of the sample
+ *
+ * @author yuzisheng
+ * @date 2021/12/2
+ */
+public class TrajectoryParameterEstimator {
+    /**
+     * suggested parameters and their bounds
+     */
+    public static class Estimate {
+        double eps;
+        double epsLowerBound;
+        double epsUpperBound;
+        int minNum;
+        int minNumLowerBound;
+        int minNumUpperBound;
+        double[] epsCandidates;
+        double[] entropies;
+        double[] averageNeighborhoodSizes;
+        int sampleSize;
+        long distanceEvaluationNum;
+
+        public double getEps() {
+            return eps;
+        }
+
+        public double getEpsLowerBound() {
+            return epsLowerBound;
+        }
+
+        public double getEpsUpperBound() {
+            return epsUpperBound;
+        }
+
+        public int getMinNum() {
+            return minNum;
+        }
+
+        public int getMinNumLowerBound() {
+            return minNumLowerBound;
+        }
+
+        public int getMinNumUpperBound() {
+            return minNumUpperBound;
+        }
+
+        public double[] getEpsCandidates() {
+            return epsCandidates;
+        }
+
+        /**
+         * entropy of the sampled neighborhood sizes at each candidate eps
+         */
+        public double[] getEntropies() {
+            return entropies;
+        }
+
+        /**
+         * average sampled neighborhood size at each candidate eps, including the segment itself
+         */
+        public double[] getAverageNeighborhoodSizes() {
+            return averageNeighborhoodSizes;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
+        public long getDistanceEvaluationNumber() {
+            return distanceEvaluationNum;
+        }
+
+        @Override
+        public String toString() {
+            return "eps " + eps + " [" + epsLowerBound + ", " + epsUpperBound + "], minNum " + minNum
+                    + " [" + minNumLowerBound + ", " + minNumUpperBound + "], sample " + sampleSize
+                    + ", distance evaluations " + distanceEvaluationNum;
+        }
+    }
+
+    /**
+     * segments to be clustered
+     */
+    SegmentAccess store;
+    /**
+     * candidate eps in ascending order
+     */
+    double[] epsCandidates;
+    /**
+     * index to find candidates of eps neighborhood, a grid at the largest eps is built if null
+     */
+    SegmentIndex index;
+    int sampleSize = 1000;
+    int bootstrapNum = 200;
+    /**
+     * share of the bootstrap estimates within the bounds
+     */
+    double confidence = 0.9;
+    long seed = 0L;
+
+    public TrajectoryParameterEstimator(SegmentAccess store, double[] epsCandidates) {
+        this.store = store;
+        this.epsCandidates = epsCandidates.clone();
+        Arrays.sort(this.epsCandidates);
+    }
+
+    public void setIndex(SegmentIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * number of sampled segments, all segments are used if there are not more
+     */
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public void setBootstrapNum(int bootstrapNum) {
+        this.bootstrapNum = bootstrapNum;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public Estimate estimate() throws Exception {
+        int n = store.size();
+        int k = epsCandidates.length;
+        if (n == 0 || k == 0) {
+            throw new Exception("no segment or eps candidate to estimate from");
+        }
+        double maxEps = epsCandidates[k - 1];
+        if (index == null) {
+            index = new GridSegmentIndex(store, computeSearchRadius(maxEps));
+        }
+        Random random = new Random(seed);
+        int m = Math.min(sampleSize, n);
+        int[] sample = sampleWithoutReplacement(random, n, m);
+
+        // neighborhood size of each sampled segment at each candidate eps
+        int[][] sizes = new int[m][k];
+        long[] evaluationNum = {0L};
+        double radius = computeSearchRadius(maxEps);
+        for (int s = 0; s < m; s++) {
+            int i = sample[s];
+            int[] counts = sizes[s];
+            index.query(store.getMinX(i) - radius, store.getMinY(i) - radius,
+                    store.getMaxX(i) + radius, store.getMaxY(i) + radius, j -> {
+                        evaluationNum[0]++;
+                        double distance = computeSegmentToSegmentDistance(store, i, j);
+                        if (distance <= maxEps) {
+                            counts[firstCandidateAtLeast(distance)]++;
+                        }
+                    });
+            for (int c = 1; c < k; c++) {
+                counts[c] += counts[c - 1];
+            }
+        }
+
+        Estimate estimate = new Estimate();
+        estimate.epsCandidates = epsCandidates.clone();
+        estimate.entropies = new double[k];
+        estimate.averageNeighborhoodSizes = new double[k];
+        estimate.sampleSize = m;
+        estimate.distanceEvaluationNum = evaluationNum[0];
+        int[] identity = new int[m];
+        for (int s = 0; s < m; s++) {
+            identity[s] = s;
+        }
+        int best = computeEntropies(sizes, identity, estimate.entropies, estimate.averageNeighborhoodSizes);
+        estimate.eps = epsCandidates[best];
+        estimate.minNum = (int) Math.round(estimate.averageNeighborhoodSizes[best]) + 2;
+
+        // bootstrap the minimum and the average size there
+        double[] bootstrapEpses = new double[bootstrapNum];
+        double[] bootstrapSizes = new double[bootstrapNum];
+        double[] entropies = new double[k], averageSizes = new double[k];
+        int[] resample = new int[m];
+        for (int b = 0; b < bootstrapNum; b++) {
+            for (int s = 0; s < m; s++) {
+                resample[s] = random.nextInt(m);
+            }
+            int bootstrapBest = computeEntropies(sizes, resample, entropies, averageSizes);
+            bootstrapEpses[b] = epsCandidates[bootstrapBest];
+            bootstrapSizes[b] = averageSizes[bootstrapBest];
+        }
+        if (bootstrapNum > 0) {
+            Arrays.sort(bootstrapEpses);
+            Arrays.sort(bootstrapSizes);
+            double tail = (1 - confidence) / 2;
+            estimate.epsLowerBound = percentile(bootstrapEpses, tail);
+            estimate.epsUpperBound = percentile(bootstrapEpses, 1 - tail);
+            estimate.minNumLowerBound = (int) Math.round(percentile(bootstrapSizes, tail)) + 1;
+            estimate.minNumUpperBound = (int) Math.round(percentile(bootstrapSizes, 1 - tail)) + 3;
+        } else {
+            estimate.epsLowerBound = estimate.epsUpperBound = estimate.eps;
+            estimate.minNumLowerBound = estimate.minNum - 1;
+            estimate.minNumUpperBound = estimate.minNum + 1;
+        }
+        return estimate;
+    }
+
+    /**
+     * entropy and average size at each candidate eps over the given sample rows
+     *
+     * @return candidate with the lowest entropy
+     */
+    private int computeEntropies(int[][] sizes, int[] rows, double[] entropies, double[] averageSizes) {
+        int best = 0;
+        for (int c = 0; c < epsCandidates.length; c++) {
+            // every size is at least 1 as a segment is within any eps of itself
+            double total = 0;
+            for (int row : rows) {
+                total += sizes[row][c];
+            }
+            double entropy = 0;
+            for (int row : rows) {
+                double p = sizes[row][c] / total;
+                entropy -= p * log2(p);
+            }
+            entropies[c] = entropy;
+            averageSizes[c] = total / rows.length;
+            if (entropy < entropies[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private int firstCandidateAtLeast(double distance) {
+        int low = 0, high = epsCandidates.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epsCandidates[mid] < distance) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] sampleWithoutReplacement(Random random, int n, int m) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+        }
+        for (int s = 0; s < m; s++) {
+            int r = s + random.nextInt(n - s);
+            int temp = ids[s];
+            ids[s] = ids[r];
+            ids[r] = temp;
+        }
+        return Arrays.copyOf(ids, m);
+    }
+
+    private static double percentile(double[] sorted, double q) {
+        int position = (int) Math.round(q * (sorted.length - 1));
+        return sorted[Math.min(Math.max(position, 0), sorted.length - 1)];
+    }
+}
@@ -2,9 +2,14 @@ package com.urbancomputing.trajectory.cluster;
 
 import com.urbancomputing.trajectory.model.Point;
 import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentStore;
 import com.urbancomputing.trajectory.model.Trajectory;
 
+import com.urbancomputing.trajectory.util.ParallelRange;
+
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * trajectory partition
@@ -13,6 +18,15 @@ import java.util.ArrayList;
  * @date 2021/11/5
  */
 public class TrajectoryPartition {
+    /**
+     * consumer of partitioned segments, e.g. the add of a {@link SegmentStore} or of an off-heap store, an exception
+     * stops the partition and is thrown to the caller
+     */
+    @FunctionalInterface
+    public interface SegmentConsumer {
+        void accept(double startX, double startY, double endX, double endY, String tid) throws Exception;
+    }
+
     /**
      * raw trajectories
      */
@@ -21,25 +35,148 @@ public class TrajectoryPartition {
      * minimum length threshold to filter short segments
      */
     private final double minSegmentLength;
+    /**
+     * pool to partition trajectories concurrently, null for the sequential run
+     */
+    private ForkJoinPool pool;
+    /**
+     * number of characteristic points found by the last run
+     */
+    private long characteristicPointNum;
 
     public TrajectoryPartition(ArrayList<Trajectory> trajs, double minSegmentLength) {
         this.trajs = trajs;
         this.minSegmentLength = minSegmentLength;
     }
 
+    /**
+     * partition trajectories concurrently on the pool, segments keep the order of the sequential run
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     public ArrayList<Segment> partition() throws Exception {
         ArrayList<Segment> partitionedSegments = new ArrayList<>();
+        partition((startX, startY, endX, endY, tid) ->
+                partitionedSegments.add(new Segment(new Point(startX, startY), new Point(endX, endY), tid)));
+        return partitionedSegments;
+    }
+
+    /**
+     * partition into a columnar store, segments are in the same order as {@link #partition()}
+     */
+    public SegmentStore partitionToStore() throws Exception {
+        if (pool == null) {
+            SegmentStore store = new SegmentStore();
+            characteristicPointNum = partition(trajs.iterator(), minSegmentLength, store::add);
+            return store;
+        }
+        ArrayList<Point>[] characteristicPoints = computeCharacteristicPointsInParallel();
+        countCharacteristicPoints(characteristicPoints);
+        // presize the store with the exact number of segments, then fill it in trajectory order
+        int segmentNumber = 0;
+        for (int t = 0; t < trajs.size(); t++) {
+            segmentNumber += countSegments(characteristicPoints[t], minSegmentLength);
+        }
+        SegmentStore store = new SegmentStore(segmentNumber);
+        for (int t = 0; t < trajs.size(); t++) {
+            emitSegments(characteristicPoints[t], trajs.get(t).getTid(), minSegmentLength, store::add);
+        }
+        return store;
+    }
+
+    /**
+     * partition and hand the segments to the consumer in trajectory order
+     */
+    public void partition(SegmentConsumer consumer) throws Exception {
+        if (pool == null) {
+            characteristicPointNum = partition(trajs.iterator(), minSegmentLength, consumer);
+            return;
+        }
+        ArrayList<Point>[] characteristicPoints = computeCharacteristicPointsInParallel();
+        countCharacteristicPoints(characteristicPoints);
+        for (int t = 0; t < trajs.size(); t++) {
+            emitSegments(characteristicPoints[t], trajs.get(t).getTid(), minSegmentLength, consumer);
+        }
+    }
+
+    /**
+     * partition trajectories one at a time as the iterator produces them, the segments of each trajectory are handed
+     * to the consumer as soon as it is partitioned, so downstream stages can start before the input is exhausted
+     *
+     * @return number of characteristic points
+     */
+    public static long partition(Iterator<Trajectory> trajs, double minSegmentLength, SegmentConsumer consumer) throws Exception {
+        long characteristicPointNum = 0;
+        while (trajs.hasNext()) {
+            Trajectory traj = trajs.next();
+            checkPointNumber(traj);
+            ArrayList<Point> characteristicPoints = computeCharacteristicPoints(traj);
+            characteristicPointNum += characteristicPoints.size();
+            emitSegments(characteristicPoints, traj.getTid(), minSegmentLength, consumer);
+        }
+        return characteristicPointNum;
+    }
+
+    /**
+     * number of characteristic points found by the last run, segments shorter than the minimum length are dropped
+     * between them
+     */
+    public long getCharacteristicPointNumber() {
+        return characteristicPointNum;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ArrayList<Point>[] computeCharacteristicPointsInParallel() throws Exception {
         for (Trajectory traj : trajs) {
-            partitionedSegments.addAll(partitionOneTraj(traj));
+            checkPointNumber(traj);
         }
-        return partitionedSegments;
+        ArrayList<Point>[] characteristicPoints = new ArrayList[trajs.size()];
+        ParallelRange.forEach(pool, 0, trajs.size(), 1, (from, to) -> {
+            for (int t = from; t < to; t++) {
+                characteristicPoints[t] = computeCharacteristicPoints(trajs.get(t));
+            }
+        });
+        return characteristicPoints;
     }
 
-    private ArrayList<Segment> partitionOneTraj(Trajectory traj) throws Exception {
-        int pointNumber = traj.getPointNumber();
-        if (pointNumber < 2) {
+    private void countCharacteristicPoints(ArrayList<Point>[] characteristicPoints) {
+        characteristicPointNum = 0;
+        for (ArrayList<Point> points : characteristicPoints) {
+            characteristicPointNum += points.size();
+        }
+    }
+
+    private static int countSegments(ArrayList<Point> characteristicPoints, double minSegmentLength) {
+        int segmentNumber = 0;
+        for (int i = 0; i < characteristicPoints.size() - 1; i++) {
+            if (TrajectoryDistance.computePointToPointDistance(characteristicPoints.get(i), characteristicPoints.get(i + 1)) >= minSegmentLength) {
+                segmentNumber++;
+            }
+        }
+        return segmentNumber;
+    }
+
+    private static void emitSegments(ArrayList<Point> characteristicPoints, String tid, double minSegmentLength,
+                                     SegmentConsumer consumer) throws Exception {
+        for (int i = 0; i < characteristicPoints.size() - 1; i++) {
+            Point start = characteristicPoints.get(i), end = characteristicPoints.get(i + 1);
+            if (TrajectoryDistance.computePointToPointDistance(start, end) >= minSegmentLength) {
+                consumer.accept(start.getLng(), start.getLat(), end.getLng(), end.getLat(), tid);
+            }
+        }
+    }
+
+    private static void checkPointNumber(Trajectory traj) throws Exception {
+        if (traj.getPointNumber() < 2) {
             throw new Exception("trajectory to be partitioned shall contain at least two points");
         }
+    }
+
+    private static ArrayList<Point> computeCharacteristicPoints(Trajectory traj) {
+        int pointNumber = traj.getPointNumber();
+        MDLCostEvaluator evaluator = new MDLCostEvaluator(traj);
 
         ArrayList<Point> characteristicPoints = new ArrayList<>();
         // first: add the start point
@@ -47,17 +184,17 @@ public class TrajectoryPartition {
 
         // second: check each point
         int startIndex = 0, length = 1, currIndex;
-        int parMDLCost, noParMDLCost;
+        int noParMDLCost = 0;
         do {
             currIndex = startIndex + length;
+            // L(H) assuming no characteristic point between pi and pj grows by one edge per step, L(D|H)=0
+            noParMDLCost += evaluator.edgeModelCost[currIndex - 1];
             // MDLCost = L(H) + L(D|H)
-            parMDLCost = computeParModelCost(traj, startIndex, currIndex) + computeEncodingCost(traj, startIndex, currIndex);
-            // L(D|H)=0 when there is no characteristic point between pi and pj
-            noParMDLCost = computeNoParModelCost(traj, startIndex, currIndex);
-            if (parMDLCost > noParMDLCost) {
+            if (evaluator.isParMDLCostGreater(startIndex, currIndex, noParMDLCost)) {
                 characteristicPoints.add(traj.getPoint(currIndex - 1));
                 startIndex = currIndex - 1;
                 length = 1;
+                noParMDLCost = 0;
             } else {
                 length += 1;
             }
@@ -65,57 +202,73 @@ public class TrajectoryPartition {
 
         // third: add the end point
         characteristicPoints.add(traj.getPoint(pointNumber - 1));
-
-        ArrayList<Segment> segments = new ArrayList<>();
-        for (int i = 0; i < characteristicPoints.size() - 1; i++) {
-            Segment s = new Segment(characteristicPoints.get(i), characteristicPoints.get(i + 1), traj.getTid());
-            if (s.length() >= minSegmentLength) {
-                segments.add(s);
-            }
-        }
-        return segments;
+        return characteristicPoints;
     }
+}
 
+/**
+ * MDL costs of one trajectory, coordinates, edge lengths and edge model costs are computed once
+ */
+class MDLCostEvaluator {
+    /**
+     * point coordinates
+     */
+    final double[] xs, ys;
+    /**
+     * length of edge k from point k to point k + 1
+     */
+    final double[] edgeLength;
     /**
-     * compute L(H) assuming pi and pj are only two characteristic points
+     * L(H) of edge k alone
      */
-    private static int computeParModelCost(Trajectory traj, int i, int j) {
-        double distance = TrajectoryDistance.computePointToPointDistance(traj.getPoint(i), traj.getPoint(j));
-        if (distance < 1.0) distance = 1.0;
-        return (int) Math.ceil(TrajectoryDistance.log2(distance));
+    final int[] edgeModelCost;
+
+    MDLCostEvaluator(Trajectory traj) {
+        int pointNumber = traj.getPointNumber();
+        xs = new double[pointNumber];
+        ys = new double[pointNumber];
+        for (int k = 0; k < pointNumber; k++) {
+            xs[k] = traj.getX(k);
+            ys[k] = traj.getY(k);
+        }
+        edgeLength = new double[pointNumber - 1];
+        edgeModelCost = new int[pointNumber - 1];
+        for (int k = 0; k < pointNumber - 1; k++) {
+            edgeLength[k] = computeDistance(k, k + 1);
+            edgeModelCost[k] = computeLogCost(edgeLength[k]);
+        }
     }
 
     /**
-     * compute L(H) assuming no characteristic point between pi and pj
+     * check L(H) + L(D|H) > limit assuming pi and pj are only two characteristic points, all the terms are
+     * non-negative so the sum stops as soon as it exceeds the limit
      */
-    private static int computeNoParModelCost(Trajectory traj, int i, int j) {
-        int modelCost = 0;
-        double distance;
+    boolean isParMDLCostGreater(int i, int j, int limit) {
+        double length = computeDistance(i, j);
+        // L(H)
+        int cost = computeLogCost(length);
+        if (cost > limit) return true;
+        // L(D|H)
         for (int k = i; k < j; k++) {
-            distance = TrajectoryDistance.computePointToPointDistance(traj.getPoint(k), traj.getPoint(k + 1));
-            if (distance < 1.0) distance = 1.0;
-            modelCost += (int) Math.ceil(TrajectoryDistance.log2(distance));
+            double perDistance = TrajectoryDistance.computePerpendicularDistance(xs[i], ys[i], xs[j], ys[j], length,
+                    xs[k], ys[k], xs[k + 1], ys[k + 1], edgeLength[k]);
+            double angleDistance = TrajectoryDistance.computeAngleDistance(xs[i], ys[i], xs[j], ys[j], length,
+                    xs[k], ys[k], xs[k + 1], ys[k + 1], edgeLength[k]);
+            cost += computeLogCost(perDistance) + computeLogCost(angleDistance);
+            if (cost > limit) return true;
         }
-        return modelCost;
+        return false;
+    }
+
+    private double computeDistance(int i, int j) {
+        return Math.sqrt((xs[i] - xs[j]) * (xs[i] - xs[j]) + (ys[i] - ys[j]) * (ys[i] - ys[j]));
     }
 
     /**
-     * compute L(D|H) assuming pi and pj are only two characteristic points
+     * ceil(log2(x)) with x below 1 counted as 1
      */
-    private static int computeEncodingCost(Trajectory traj, int i, int j) {
-        int encodingCost = 0;
-        Segment s1 = new Segment(traj.getPoint(i), traj.getPoint(j));
-        Segment s2;
-        double perDistance, angleDistance;
-        for (int k = i; k < j; k++) {
-            s2 = new Segment(traj.getPoint(k), traj.getPoint(k + 1));
-            perDistance = TrajectoryDistance.computePerpendicularDistance(s1, s2);
-            angleDistance = TrajectoryDistance.computeAngleDistance(s1, s2);
-
-            if (perDistance < 1.0) perDistance = 1.0;
-            if (angleDistance < 1.0) angleDistance = 1.0;
-            encodingCost += ((int) Math.ceil(TrajectoryDistance.log2(perDistance)) + (int) Math.ceil(TrajectoryDistance.log2(angleDistance)));
-        }
-        return encodingCost;
+    private static int computeLogCost(double x) {
+        if (x < 1.0) x = 1.0;
+        return (int) Math.ceil(TrajectoryDistance.log2(x));
     }
 }
@@ -0,0 +1,397 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.IntList;
+import com.urbancomputing.trajectory.util.ParallelRange;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * headless renderer of raw trajectories, partitioned segments and representative trajectories into offscreen images
+ * and png tiles, no display is needed
+ * <p>
+ * raw trajectories and segments are decimated to one vertex per pixel, binned by tile and rasterized into counts per
+ * pixel which are shaded by density, representative trajectories are drawn as lines on top, tiles are independent and
+ * rendered on the pool, a pixel of raw trajectories or segments does not depend on the tile size
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class TrajectoryRenderer {
+    /**
+     * world rectangle mapped onto an image, north up
+     */
+    public static class Viewport {
+        final double minX, minY, maxX, maxY;
+        final int width, height;
+
+        public Viewport(double minX, double minY, double maxX, double maxY, int width, int height) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        double toPixelX(double x) {
+            return (x - minX) / (maxX - minX) * width;
+        }
+
+        double toPixelY(double y) {
+            return (maxY - y) / (maxY - minY) * height;
+        }
+    }
+
+    private static final Color RAW_COLOR = new Color(0, 160, 0);
+    private static final Color SEGMENT_COLOR = Color.BLUE;
+    private static final Color REPRESENTATIVE_COLOR = Color.RED;
+    private static final int BACKGROUND_RGB = 0xffffff;
+    private static final float REPRESENTATIVE_WIDTH = 2.0f;
+    /**
+     * share of the data extent left blank around it by {@link #fitViewport(int, int)}
+     */
+    private static final double MARGIN = 0.02;
+    /**
+     * ints per binned line: start x, start y, end x, end y in pixels and the first step to rasterize
+     */
+    private static final int LINE_INTS = 5;
+
+    List<? extends Trajectory> rawTrajs;
+    SegmentAccess segments;
+    List<? extends Trajectory> representativeTrajs;
+    /**
+     * pool to render tiles concurrently, null for the sequential run
+     */
+    ForkJoinPool pool;
+    /**
+     * whether pixels are shaded by the number of lines crossing them instead of uniformly
+     */
+    boolean density = true;
+    /**
+     * number of lines crossing a pixel at which its shade is full
+     */
+    int saturationCount = 32;
+
+    /**
+     * any layer may be null
+     */
+    public TrajectoryRenderer(List<? extends Trajectory> rawTrajs, SegmentAccess segments,
+                              List<? extends Trajectory> representativeTrajs) {
+        this.rawTrajs = rawTrajs;
+        this.segments = segments;
+        this.representativeTrajs = representativeTrajs;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setDensity(boolean density) {
+        this.density = density;
+    }
+
+    public void setSaturationCount(int saturationCount) {
+        this.saturationCount = Math.max(saturationCount, 1);
+    }
+
+    /**
+     * viewport of the given size showing all layers with the same scale along both axes
+     */
+    public Viewport fitViewport(int width, int height) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        extend(box, rawTrajs);
+        extend(box, representativeTrajs);
+        if (segments != null) {
+            for (int i = 0; i < segments.size(); i++) {
+                extend(box, segments.getMinX(i), segments.getMinY(i));
+                extend(box, segments.getMaxX(i), segments.getMaxY(i));
+            }
+        }
+        if (box[0] > box[2]) {
+            box[0] = box[1] = 0.0;
+            box[2] = box[3] = 1.0;
+        }
+        double centerX = (box[0] + box[2]) / 2, centerY = (box[1] + box[3]) / 2;
+        // world units per pixel, the larger of both axes
+        double scale = Math.max((box[2] - box[0]) / width, (box[3] - box[1]) / height) * (1 + 2 * MARGIN);
+        if (scale == 0.0) {
+            scale = 1.0 / Math.max(width, height);
+        }
+        return new Viewport(centerX - scale * width / 2, centerY - scale * height / 2,
+                centerX + scale * width / 2, centerY + scale * height / 2, width, height);
+    }
+
+    /**
+     * render the viewport into one image
+     */
+    public BufferedImage render(Viewport viewport) {
+        int tileSize = Math.max(viewport.width, viewport.height);
+        return renderTile(viewport, tileSize, 0, 0, binLayers(viewport, tileSize));
+    }
+
+    /**
+     * render the viewport into png tiles of tileSize pixels named column_row.png in the directory
+     *
+     * @return number of tiles
+     */
+    public int renderTiles(Viewport viewport, int tileSize, File directory) throws IOException {
+        int cols = (viewport.width + tileSize - 1) / tileSize, rows = (viewport.height + tileSize - 1) / tileSize;
+        IntList[][] layers = binLayers(viewport, tileSize);
+        ParallelRange.RangeConsumer rangeConsumer = (from, to) -> {
+            for (int t = from; t < to; t++) {
+                int col = t % cols, row = t / cols;
+                BufferedImage image = renderTile(viewport, tileSize, col, row, layers);
+                try {
+                    ImageIO.write(image, "png", new File(directory, col + "_" + row + ".png"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try {
+            if (pool != null) {
+                ParallelRange.forEach(pool, 0, cols * rows, 1, rangeConsumer);
+            } else {
+                rangeConsumer.accept(0, cols * rows);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return cols * rows;
+    }
+
+    /**
+     * lines of raw trajectories and of segments binned by tile
+     */
+    private IntList[][] binLayers(Viewport viewport, int tileSize) {
+        int cols = (viewport.width + tileSize - 1) / tileSize, rows = (viewport.height + tileSize - 1) / tileSize;
+        LineBinner raw = new LineBinner(viewport, tileSize, cols, rows);
+        if (rawTrajs != null) {
+            for (Trajectory traj : rawTrajs) {
+                int n = traj.getPointNumber();
+                if (n == 0) {
+                    continue;
+                }
+                double lastX = viewport.toPixelX(traj.getX(0)), lastY = viewport.toPixelY(traj.getY(0));
+                boolean continuation = false;
+                for (int i = 1; i < n; i++) {
+                    double x = viewport.toPixelX(traj.getX(i)), y = viewport.toPixelY(traj.getY(i));
+                    // points within the pixel of the last kept point add nothing
+                    if (Math.floor(x) == Math.floor(lastX) && Math.floor(y) == Math.floor(lastY)) {
+                        continue;
+                    }
+                    raw.add(lastX, lastY, x, y, continuation);
+                    continuation = true;
+                    lastX = x;
+                    lastY = y;
+                }
+                if (!continuation) {
+                    raw.add(lastX, lastY, lastX, lastY, false);
+                }
+            }
+        }
+        LineBinner segment = new LineBinner(viewport, tileSize, cols, rows);
+        if (segments != null) {
+            for (int i = 0; i < segments.size(); i++) {
+                segment.add(viewport.toPixelX(segments.getX1(i)), viewport.toPixelY(segments.getY1(i)),
+                        viewport.toPixelX(segments.getX2(i)), viewport.toPixelY(segments.getY2(i)), false);
+            }
+        }
+        return new IntList[][]{raw.tiles, segment.tiles};
+    }
+
+    private BufferedImage renderTile(Viewport viewport, int tileSize, int col, int row, IntList[][] layers) {
+        int cols = (viewport.width + tileSize - 1) / tileSize;
+        int originX = col * tileSize, originY = row * tileSize;
+        int width = Math.min(tileSize, viewport.width - originX), height = Math.min(tileSize, viewport.height - originY);
+        int[] rgb = new int[width * height];
+        Arrays.fill(rgb, BACKGROUND_RGB);
+        int[] counts = new int[width * height];
+        Color[] colors = {RAW_COLOR, SEGMENT_COLOR};
+        for (int l = 0; l < layers.length; l++) {
+            Arrays.fill(counts, 0);
+            rasterize(layers[l][row * cols + col], originX, originY, width, height, counts);
+            shade(counts, colors[l], rgb);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, rgb, 0, width);
+        if (representativeTrajs != null) {
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setStroke(new BasicStroke(REPRESENTATIVE_WIDTH, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.setColor(REPRESENTATIVE_COLOR);
+            g.translate(-originX, -originY);
+            for (Trajectory traj : representativeTrajs) {
+                Path2D.Double path = new Path2D.Double();
+                for (int i = 0; i < traj.getPointNumber(); i++) {
+                    double x = viewport.toPixelX(traj.getX(i)), y = viewport.toPixelY(traj.getY(i));
+                    if (i == 0) {
+                        path.moveTo(x, y);
+                    } else {
+                        path.lineTo(x, y);
+                    }
+                }
+                if (path.getBounds2D().intersects(originX - REPRESENTATIVE_WIDTH, originY - REPRESENTATIVE_WIDTH,
+                        width + 2 * REPRESENTATIVE_WIDTH, height + 2 * REPRESENTATIVE_WIDTH)) {
+                    g.draw(path);
+                }
+            }
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * count the pixels of the tile on each line, pixel k of a line of n steps is the start plus k / n of the line
+     * rounded, so a pixel is the same in every tile
+     */
+    private static void rasterize(IntList lines, int originX, int originY, int width, int height, int[] counts) {
+        for (int l = 0; l < lines.size(); l += LINE_INTS) {
+            int x0 = lines.get(l), y0 = lines.get(l + 1), dx = lines.get(l + 2) - x0, dy = lines.get(l + 3) - y0;
+            int n = Math.max(Math.abs(dx), Math.abs(dy));
+            long kLow = lines.get(l + 4), kHigh = n;
+            // the major axis moves one pixel per step, which bounds the steps inside the tile
+            if (Math.abs(dx) == n && n > 0) {
+                kLow = Math.max(kLow, dx > 0 ? originX - x0 : x0 - (originX + width - 1));
+                kHigh = Math.min(kHigh, dx > 0 ? originX + width - 1 - x0 : x0 - originX);
+            } else if (n > 0) {
+                kLow = Math.max(kLow, dy > 0 ? originY - y0 : y0 - (originY + height - 1));
+                kHigh = Math.min(kHigh, dy > 0 ? originY + height - 1 - y0 : y0 - originY);
+            }
+            for (long k = kLow; k <= kHigh; k++) {
+                int x = x0 - originX, y = y0 - originY;
+                if (n > 0) {
+                    x += (int) Math.floorDiv(2 * k * dx + n, 2L * n);
+                    y += (int) Math.floorDiv(2 * k * dy + n, 2L * n);
+                }
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    counts[y * width + x]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * blend the layer color over the pixels by their counts
+     */
+    private void shade(int[] counts, Color color, int[] rgb) {
+        double saturation = Math.log1p(saturationCount);
+        for (int p = 0; p < counts.length; p++) {
+            if (counts[p] == 0) {
+                continue;
+            }
+            double alpha = density ? Math.min(1.0, Math.log1p(counts[p]) / saturation) : 1.0;
+            int background = rgb[p];
+            int r = blend((background >> 16) & 0xff, color.getRed(), alpha);
+            int g = blend((background >> 8) & 0xff, color.getGreen(), alpha);
+            int b = blend(background & 0xff, color.getBlue(), alpha);
+            rgb[p] = r << 16 | g << 8 | b;
+        }
+    }
+
+    private static int blend(int background, int foreground, double alpha) {
+        return (int) Math.round(background + (foreground - background) * alpha);
+    }
+
+    private static void extend(double[] box, List<? extends Trajectory> trajs) {
+        if (trajs != null) {
+            for (Trajectory traj : trajs) {
+                for (int i = 0; i < traj.getPointNumber(); i++) {
+                    extend(box, traj.getX(i), traj.getY(i));
+                }
+            }
+        }
+    }
+
+    private static void extend(double[] box, double x, double y) {
+        box[0] = Math.min(box[0], x);
+        box[1] = Math.min(box[1], y);
+        box[2] = Math.max(box[2], x);
+        box[3] = Math.max(box[3], y);
+    }
+}
+
+/**
+ * clips lines in pixel coordinates to the image and appends them to the tiles covered by their bounding box
+ */
+class LineBinner {
+    final IntList[] tiles;
+    private final int width, height, tileSize, cols;
+
+    LineBinner(TrajectoryRenderer.Viewport viewport, int tileSize, int cols, int rows) {
+        this.width = viewport.width;
+        this.height = viewport.height;
+        this.tileSize = tileSize;
+        this.cols = cols;
+        this.tiles = new IntList[cols * rows];
+        for (int t = 0; t < tiles.length; t++) {
+            tiles[t] = new IntList();
+        }
+    }
+
+    /**
+     * add the line from (x0, y0) to (x1, y1), a continuation skips its first pixel which ends the previous line
+     */
+    void add(double x0, double y0, double x1, double y1, boolean continuation) {
+        // liang-barsky clipping to [0, width] x [0, height]
+        double dx = x1 - x0, dy = y1 - y0;
+        double[] t = {0.0, 1.0};
+        if (!clip(-dx, x0, t) || !clip(dx, width - x0, t) || !clip(-dy, y0, t) || !clip(dy, height - y0, t)) {
+            return;
+        }
+        int startX = toPixel(x0 + t[0] * dx, width), startY = toPixel(y0 + t[0] * dy, height);
+        int endX = toPixel(x0 + t[1] * dx, width), endY = toPixel(y0 + t[1] * dy, height);
+        int first = continuation && t[0] == 0.0 ? 1 : 0;
+        if (first == 1 && startX == endX && startY == endY) {
+            return;
+        }
+        for (int row = Math.min(startY, endY) / tileSize; row <= Math.max(startY, endY) / tileSize; row++) {
+            for (int col = Math.min(startX, endX) / tileSize; col <= Math.max(startX, endX) / tileSize; col++) {
+                IntList tile = tiles[row * cols + col];
+                tile.add(startX);
+                tile.add(startY);
+                tile.add(endX);
+                tile.add(endY);
+                tile.add(first);
+            }
+        }
+    }
+
+    private static boolean clip(double p, double q, double[] t) {
+        if (p == 0.0) {
+            return q >= 0.0;
+        }
+        double r = q / p;
+        if (p < 0.0) {
+            if (r > t[1]) return false;
+            t[0] = Math.max(t[0], r);
+        } else {
+            if (r < t[0]) return false;
+            t[1] = Math.min(t[1], r);
+        }
+        return true;
+    }
+
+    private static int toPixel(double coordinate, int size) {
+        return Math.min(Math.max((int) Math.floor(coordinate), 0), size - 1);
+    }
+}
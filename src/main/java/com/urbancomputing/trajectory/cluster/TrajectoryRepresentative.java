@@ -2,9 +2,16 @@ package com.urbancomputing.trajectory.cluster;
 
 import com.urbancomputing.trajectory.model.Point;
 import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.model.SegmentStore;
 import com.urbancomputing.trajectory.model.Trajectory;
+import com.urbancomputing.trajectory.util.IndexSort;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
+import com.urbancomputing.trajectory.util.ParallelRange;
 
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeInnerProduct;
 import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeVectorLength;
@@ -33,10 +40,14 @@ public class TrajectoryRepresentative {
      */
     double minSmoothingLength;
 
-    List<Segment> segments;
-    List<Integer> clusterIds;
+    SegmentAccess store;
+    IntBuffer clusterIds;
     int clusterNum;
     SegmentCluster[] segmentClusters;
+    /**
+     * pool to compute clusters concurrently, null for the sequential run
+     */
+    ForkJoinPool pool;
 
     public TrajectoryRepresentative(List<Segment> segments,
                                     List<Integer> clusterIds,
@@ -44,7 +55,32 @@ public class TrajectoryRepresentative {
                                     double minSmoothingLength,
                                     int minTrajNumForCluster,
                                     int minSegmentNumForSweep) {
-        this.segments = segments;
+        this(SegmentStore.of(segments), clusterIds.stream().mapToInt(Integer::intValue).toArray(), clusterNum,
+                minSmoothingLength, minTrajNumForCluster, minSegmentNumForSweep);
+    }
+
+    public TrajectoryRepresentative(SegmentAccess store,
+                                    int[] clusterIds,
+                                    int clusterNum,
+                                    double minSmoothingLength,
+                                    int minTrajNumForCluster,
+                                    int minSegmentNumForSweep) {
+        this(store, IntBuffer.wrap(clusterIds), clusterNum, minSmoothingLength, minTrajNumForCluster,
+                minSegmentNumForSweep);
+    }
+
+    /**
+     * read cluster ids from a buffer, e.g. {@link TrajectoryDBScan#getLabelBuffer()}, segments are bucketed by cluster
+     * outside the java heap when the buffer is direct, only the segments of the clusters being computed are rotated on
+     * the heap
+     */
+    public TrajectoryRepresentative(SegmentAccess store,
+                                    IntBuffer clusterIds,
+                                    int clusterNum,
+                                    double minSmoothingLength,
+                                    int minTrajNumForCluster,
+                                    int minSegmentNumForSweep) {
+        this.store = store;
         this.clusterIds = clusterIds;
         this.clusterNum = clusterNum;
         this.minSmoothingLength = minSmoothingLength;
@@ -52,123 +88,195 @@ public class TrajectoryRepresentative {
         this.minSegmentNumForSweep = minSegmentNumForSweep;
     }
 
+    /**
+     * compute the representative trajectories of different clusters concurrently on the pool, the output is identical
+     * to the sequential run
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     public ArrayList<Trajectory> compute() {
         // noise is exclusive
-        segmentClusters = new SegmentCluster[clusterNum];
+        int[] clusters = new int[clusterNum];
+        for (int i = 0; i < clusterNum; i++) {
+            clusters[i] = i;
+        }
+        ArrayList<ArrayList<Point>> representativePoints = computeClusters(clusters);
 
-        // initialize
+        // convert cluster to trajectory
+        int newCurrClusterId = 0;
+        ArrayList<Trajectory> representativeTrajs = new ArrayList<>();
         for (int i = 0; i < clusterNum; i++) {
-            segmentClusters[i] = new SegmentCluster();
-            segmentClusters[i].clusterId = i;
-            segmentClusters[i].segmentNumber = 0;
-            segmentClusters[i].enabled = false;
+            if (representativePoints.get(i) != null) {
+                representativeTrajs.add(new Trajectory(Integer.toString(newCurrClusterId), representativePoints.get(i)));
+                newCurrClusterId++;
+            }
         }
+        return representativeTrajs;
+    }
 
-        // first: compute average direction vector for each cluster
-        for (int i = 0; i < segments.size(); i++) {
+    /**
+     * compute the representative points of the given clusters only
+     *
+     * @param clusters distinct cluster ids in [0, clusterNum)
+     * @return representative points of each given cluster, null if it can not form a representative trajectory
+     */
+    public ArrayList<ArrayList<Point>> computeClusters(int[] clusters) {
+        int[] slot = new int[clusterNum];
+        Arrays.fill(slot, -1);
+        for (int s = 0; s < clusters.length; s++) {
+            slot[clusters[s]] = s;
+        }
+        segmentClusters = new SegmentCluster[clusters.length];
+
+        // bucket segments by cluster in one pass, segments of slot s are members[clusterStart[s], clusterStart[s + 1])
+        int[] clusterStart = new int[clusters.length + 1];
+        for (int i = 0; i < store.size(); i++) {
             int clusterId = clusterIds.get(i);
-            if (clusterId >= 0) {
-                for (int j = 0; j < POINT_DIM; j++) {
-                    double vectorValue = segments.get(i).getCoord(j + POINT_DIM) - segments.get(i).getCoord(j);
-                    double currSum = segmentClusters[clusterId].avgDirectionVector[j] + vectorValue;
-                    segmentClusters[clusterId].avgDirectionVector[j] = currSum;
-                }
-                segmentClusters[clusterId].segmentNumber++;
+            if (clusterId >= 0 && slot[clusterId] >= 0) {
+                clusterStart[slot[clusterId] + 1]++;
             }
         }
-        for (int i = 0; i < clusterNum; i++) {
-            SegmentCluster clusterEntry = segmentClusters[i];
-            for (int j = 0; j < POINT_DIM; j++) {
-                clusterEntry.avgDirectionVector[j] /= clusterEntry.segmentNumber;
+        for (int s = 0; s < clusters.length; s++) {
+            clusterStart[s + 1] += clusterStart[s];
+        }
+        IntBuffer members = OffHeapBuffers.allocateInts(clusterStart[clusters.length], clusterIds.isDirect());
+        int[] cursor = Arrays.copyOf(clusterStart, clusters.length);
+        for (int i = 0; i < store.size(); i++) {
+            int clusterId = clusterIds.get(i);
+            if (clusterId >= 0 && slot[clusterId] >= 0) {
+                members.put(cursor[slot[clusterId]]++, i);
             }
         }
 
-        // second: compute angle between average direction vector and x-axis for each cluster
-        double[] unitVectorX = new double[]{1.0, 0.0};
-        double unitVectorXLength = 1.0;
-        double cosTheta, sinTheta;
-        for (int i = 0; i < clusterNum; i++) {
-            SegmentCluster clusterEntry = segmentClusters[i];
-            cosTheta = computeInnerProduct(clusterEntry.avgDirectionVector, unitVectorX) /
-                    (computeVectorLength(clusterEntry.avgDirectionVector) * unitVectorXLength);
-            if (cosTheta > 1.0) cosTheta = 1.0;
-            if (cosTheta < -1.0) cosTheta = -1.0;
-            sinTheta = Math.sqrt(1 - Math.pow(cosTheta, 2));
-            if (clusterEntry.avgDirectionVector[1] < 0) {
-                sinTheta = -sinTheta;
-            }
-            clusterEntry.cosTheta = cosTheta;
-            clusterEntry.sinTheta = sinTheta;
+        // initialize
+        for (int s = 0; s < clusters.length; s++) {
+            segmentClusters[s] = new SegmentCluster();
+            segmentClusters[s].clusterId = clusters[s];
+            segmentClusters[s].segmentNumber = clusterStart[s + 1] - clusterStart[s];
+            segmentClusters[s].enabled = false;
         }
 
-        // third: rotate axis and update for each cluster
-        for (int i = 0; i < segments.size(); i++) {
-            if (clusterIds.get(i) >= 0) {
-                SegmentCluster clusterEntry = segmentClusters[clusterIds.get(i)];
-                Segment segment = segments.get(i);
-                double rotatedX1 = GET_X_ROTATION(segment.getCoord(0), segment.getCoord(1), clusterEntry.cosTheta, clusterEntry.sinTheta);
-                double rotatedX2 = GET_X_ROTATION(segment.getCoord(2), segment.getCoord(3), clusterEntry.cosTheta, clusterEntry.sinTheta);
-                clusterEntry.rotatedPoints.add(new RotatedPoint(rotatedX1, i));
-                clusterEntry.rotatedPoints.add(new RotatedPoint(rotatedX2, i));
-
-                clusterEntry.clusterRotatedSegments.add(new RotatedSegment(rotatedX1, rotatedX2, i));
-                clusterEntry.trajIds.add(segment.getTid());
+        // clusters are independent of each other
+        if (pool == null) {
+            for (int s = 0; s < clusters.length; s++) {
+                computeCluster(segmentClusters[s], members, clusterStart[s]);
             }
+        } else {
+            ParallelRange.forEach(pool, 0, clusters.length, 1, (from, to) -> {
+                for (int s = from; s < to; s++) {
+                    computeCluster(segmentClusters[s], members, clusterStart[s]);
+                }
+            });
         }
-        // sort by x value of rotated point
-        Comparator<RotatedPoint> comparator = Comparator.comparingDouble(o -> o.rotatedX);
+
+        ArrayList<ArrayList<Point>> representativePoints = new ArrayList<>(clusters.length);
         for (SegmentCluster clusterEntry : segmentClusters) {
-            clusterEntry.rotatedPoints.sort(comparator);
+            representativePoints.add(clusterEntry.enabled ? clusterEntry.representativePoints : null);
         }
+        return representativePoints;
+    }
 
-        // fourth: compute representative trajectory for each cluster
-        for (int i = 0; i < clusterNum; i++) {
-            SegmentCluster clusterEntry = segmentClusters[i];
-            // a cluster must contain a certain number of different trajectories
-            if (clusterEntry.trajIds.size() >= minTrajNumForCluster) {
-                clusterEntry.enabled = true;
-                computeRepresentativeTrajectory(clusterEntry);
+    /**
+     * compute one cluster whose segments are members[offset, offset + segmentNumber)
+     */
+    private void computeCluster(SegmentCluster clusterEntry, IntBuffer members, int offset) {
+        int segmentNumber = clusterEntry.segmentNumber;
+
+        // first: compute average direction vector
+        for (int m = offset; m < offset + segmentNumber; m++) {
+            int i = members.get(m);
+            for (int j = 0; j < POINT_DIM; j++) {
+                clusterEntry.avgDirectionVector[j] += store.getCoord(i, j + POINT_DIM) - store.getCoord(i, j);
             }
         }
+        for (int j = 0; j < POINT_DIM; j++) {
+            clusterEntry.avgDirectionVector[j] /= segmentNumber;
+        }
 
-        // fifth: convert cluster to trajectory
-        int newCurrClusterId = 0;
-        ArrayList<Trajectory> representativeTrajs = new ArrayList<>();
-        for (int i = 0; i < clusterNum; i++) {
-            if (segmentClusters[i].enabled) {
-                representativeTrajs.add(new Trajectory(Integer.toString(newCurrClusterId), segmentClusters[i].representativePoints));
-                newCurrClusterId++;
-            }
+        // second: compute angle between average direction vector and x-axis
+        double[] unitVectorX = new double[]{1.0, 0.0};
+        double unitVectorXLength = 1.0;
+        double cosTheta = computeInnerProduct(clusterEntry.avgDirectionVector, unitVectorX) /
+                (computeVectorLength(clusterEntry.avgDirectionVector) * unitVectorXLength);
+        if (cosTheta > 1.0) cosTheta = 1.0;
+        if (cosTheta < -1.0) cosTheta = -1.0;
+        double sinTheta = Math.sqrt(1 - Math.pow(cosTheta, 2));
+        if (clusterEntry.avgDirectionVector[1] < 0) {
+            sinTheta = -sinTheta;
         }
-        return representativeTrajs;
+        clusterEntry.cosTheta = cosTheta;
+        clusterEntry.sinTheta = sinTheta;
+
+        // third: rotate axis, each segment is rotated once
+        clusterEntry.rotatedX1 = new double[segmentNumber];
+        clusterEntry.rotatedY1 = new double[segmentNumber];
+        clusterEntry.rotatedX2 = new double[segmentNumber];
+        clusterEntry.rotatedY2 = new double[segmentNumber];
+        for (int k = 0; k < segmentNumber; k++) {
+            int i = members.get(offset + k);
+            clusterEntry.rotatedX1[k] = GET_X_ROTATION(store.getX1(i), store.getY1(i), cosTheta, sinTheta);
+            clusterEntry.rotatedY1[k] = GET_Y_ROTATION(store.getX1(i), store.getY1(i), cosTheta, sinTheta);
+            clusterEntry.rotatedX2[k] = GET_X_ROTATION(store.getX2(i), store.getY2(i), cosTheta, sinTheta);
+            clusterEntry.rotatedY2[k] = GET_Y_ROTATION(store.getX2(i), store.getY2(i), cosTheta, sinTheta);
+            clusterEntry.trajIds.add(store.getTrajIndex(i));
+        }
+
+        // fourth: a cluster must contain a certain number of different trajectories
+        if (clusterEntry.trajIds.size() >= minTrajNumForCluster) {
+            clusterEntry.enabled = true;
+            computeRepresentativeTrajectory(clusterEntry);
+        }
+        // rotated segments are not needed any more
+        clusterEntry.rotatedX1 = clusterEntry.rotatedY1 = clusterEntry.rotatedX2 = clusterEntry.rotatedY2 = null;
     }
 
     /**
-     * compute representative trajectory
+     * compute representative trajectory by sweeping a vertical line over the rotated segments, segment k covers
+     * [min(x1, x2), max(x1, x2)] and is active while the line is inside it
      */
     private void computeRepresentativeTrajectory(SegmentCluster clusterEntry) {
-        int sweepSegmentNum;
+        int segmentNum = clusterEntry.segmentNumber;
+        double[] minX = new double[segmentNum], maxX = new double[segmentNum];
+        int[] enterOrder = new int[segmentNum], exitOrder = new int[segmentNum];
+        // sweep positions are the x values of all rotated points
+        double[] sweepX = new double[2 * segmentNum];
+        for (int k = 0; k < segmentNum; k++) {
+            minX[k] = Math.min(clusterEntry.rotatedX1[k], clusterEntry.rotatedX2[k]);
+            maxX[k] = Math.max(clusterEntry.rotatedX1[k], clusterEntry.rotatedX2[k]);
+            enterOrder[k] = k;
+            exitOrder[k] = k;
+            sweepX[2 * k] = clusterEntry.rotatedX1[k];
+            sweepX[2 * k + 1] = clusterEntry.rotatedX2[k];
+        }
+        IndexSort.sort(enterOrder, segmentNum, minX);
+        IndexSort.sort(exitOrder, segmentNum, maxX);
+        Arrays.sort(sweepX);
+
+        // active segments are active[0, activeNum), position[k] is the slot of segment k in active
+        int[] active = new int[segmentNum], position = new int[segmentNum];
+        int activeNum = 0, entered = 0, exited = 0;
         double prevRotatedX = 0.0;
-        HashSet<Integer> sweepSegmentIds = new HashSet<>();
-        // sweep for each rotated point (sort by x value)
-        for (RotatedPoint rp : clusterEntry.rotatedPoints) {
-            sweepSegmentNum = 0;
-            sweepSegmentIds.clear();
-            // count the number of segments that contain x value of rotated point
-            for (RotatedSegment rs : clusterEntry.clusterRotatedSegments) {
-                if (rs.rotatedStartX <= rp.rotatedX && rp.rotatedX <= rs.rotatedEndX ||
-                        rs.rotatedEndX <= rp.rotatedX && rp.rotatedX <= rs.rotatedStartX) {
-                    sweepSegmentNum++;
-                    sweepSegmentIds.add(rs.segmentId);
-                }
+        for (double currX : sweepX) {
+            while (entered < segmentNum && minX[enterOrder[entered]] <= currX) {
+                int k = enterOrder[entered++];
+                position[k] = activeNum;
+                active[activeNum++] = k;
+            }
+            while (exited < segmentNum && maxX[exitOrder[exited]] < currX) {
+                int k = exitOrder[exited++];
+                int last = active[--activeNum];
+                active[position[k]] = last;
+                position[last] = position[k];
             }
             // if sweep enough segments
-            if (sweepSegmentNum >= minSegmentNumForSweep) {
+            if (activeNum >= minSegmentNumForSweep) {
                 // filter close representative points
-                if (Math.abs(rp.rotatedX - prevRotatedX) >= minSmoothingLength) {
-                    Point repPoint = getRepresentativePoint(clusterEntry, rp.rotatedX, sweepSegmentIds);
+                if (Math.abs(currX - prevRotatedX) >= minSmoothingLength) {
+                    Point repPoint = getRepresentativePoint(clusterEntry, currX, active, activeNum);
                     clusterEntry.representativePoints.add(repPoint);
-                    prevRotatedX = rp.rotatedX;
+                    prevRotatedX = currX;
                 }
             }
         }
@@ -179,22 +287,20 @@ public class TrajectoryRepresentative {
     /**
      * get representative point
      */
-    private Point getRepresentativePoint(SegmentCluster clusterEntry, double currX, Set<Integer> segmentIds) {
-        int sweepSegmentNumber = segmentIds.size();
+    private Point getRepresentativePoint(SegmentCluster clusterEntry, double currX, int[] active, int activeNum) {
         Point representativePoint = new Point();
-        Point sweepPoint;
 
         // compute the average of all the sweep points: x=(x1+x2+...+xn)/n
-        for (int segmentId : segmentIds) {
-            sweepPoint = getSweepPointOfSegment(clusterEntry, currX, segmentId);
-            for (int i = 0; i < POINT_DIM; i++) {
-                representativePoint.setCoord(i, representativePoint.getCoord(i) + sweepPoint.getCoord(i) / sweepSegmentNumber);
-            }
+        double sumX = 0.0, sumY = 0.0;
+        for (int a = 0; a < activeNum; a++) {
+            int k = active[a];
+            sumX += currX / activeNum;
+            sumY += getSweepY(clusterEntry, currX, k) / activeNum;
         }
 
         // recover original coordinate
-        double origX = GET_X_REV_ROTATION(representativePoint.getCoord(0), representativePoint.getCoord(1), clusterEntry.cosTheta, clusterEntry.sinTheta);
-        double origY = GET_Y_REV_ROTATION(representativePoint.getCoord(0), representativePoint.getCoord(1), clusterEntry.cosTheta, clusterEntry.sinTheta);
+        double origX = GET_X_REV_ROTATION(sumX, sumY, clusterEntry.cosTheta, clusterEntry.sinTheta);
+        double origY = GET_Y_REV_ROTATION(sumX, sumY, clusterEntry.cosTheta, clusterEntry.sinTheta);
         representativePoint.setCoord(0, origX);
         representativePoint.setCoord(1, origY);
 
@@ -202,16 +308,13 @@ public class TrajectoryRepresentative {
     }
 
     /**
-     * get point on the segment according to its x value
+     * get rotated y value of the point on the k-th segment of cluster according to its x value
      */
-    private Point getSweepPointOfSegment(SegmentCluster clusterEntry, double currXValue, int segmentId) {
-        Segment segment = segments.get(segmentId);
-        double rotatedX1 = GET_X_ROTATION(segment.getCoord(0), segment.getCoord(1), clusterEntry.cosTheta, clusterEntry.sinTheta);
-        double rotatedX2 = GET_X_ROTATION(segment.getCoord(POINT_DIM), segment.getCoord(1 + POINT_DIM), clusterEntry.cosTheta, clusterEntry.sinTheta);
-        double rotatedY1 = GET_Y_ROTATION(segment.getCoord(0), segment.getCoord(1), clusterEntry.cosTheta, clusterEntry.sinTheta);
-        double rotatedY2 = GET_Y_ROTATION(segment.getCoord(POINT_DIM), segment.getCoord(1 + POINT_DIM), clusterEntry.cosTheta, clusterEntry.sinTheta);
+    private double getSweepY(SegmentCluster clusterEntry, double currXValue, int k) {
+        double rotatedX1 = clusterEntry.rotatedX1[k], rotatedX2 = clusterEntry.rotatedX2[k];
+        double rotatedY1 = clusterEntry.rotatedY1[k], rotatedY2 = clusterEntry.rotatedY2[k];
         double coefficient = (currXValue - rotatedX1) / (rotatedX2 - rotatedX1);
-        return new Point(currXValue, rotatedY1 + coefficient * (rotatedY2 - rotatedY1));
+        return rotatedY1 + coefficient * (rotatedY2 - rotatedY1);
     }
 
     private double GET_X_ROTATION(double _x, double _y, double _cos, double _sin) {
@@ -241,21 +344,17 @@ class SegmentCluster {
      */
     int segmentNumber;
     /**
-     * ids of containing trajectories
+     * indexes of containing trajectories
      */
-    HashSet<String> trajIds = new HashSet<>();
+    HashSet<Integer> trajIds = new HashSet<>();
     /**
      * representative points
      */
     ArrayList<Point> representativePoints = new ArrayList<>();
     /**
-     * candidate representative point
-     */
-    ArrayList<RotatedPoint> rotatedPoints = new ArrayList<>();
-    /**
-     * rotated segments of cluster
+     * rotated start and end points of the segments of cluster
      */
-    ArrayList<RotatedSegment> clusterRotatedSegments = new ArrayList<>();
+    double[] rotatedX1, rotatedY1, rotatedX2, rotatedY2;
     /**
      * can form a representative trajectory or not
      */
@@ -269,40 +368,3 @@ class SegmentCluster {
      */
     double cosTheta, sinTheta;
 }
-
-class RotatedSegment {
-    /**
-     * rotated x value of start point
-     */
-    double rotatedStartX;
-    /**
-     * rotated x value of end point
-     */
-    double rotatedEndX;
-    /**
-     * segment id
-     */
-    int segmentId;
-
-    public RotatedSegment(double rotatedStartX, double rotatedEndX, int segmentId) {
-        this.rotatedStartX = rotatedStartX;
-        this.rotatedEndX = rotatedEndX;
-        this.segmentId = segmentId;
-    }
-}
-
-class RotatedPoint {
-    /**
-     * rotated x value
-     */
-    double rotatedX;
-    /**
-     * segment id
-     */
-    int segmentId;
-
-    public RotatedPoint(double rotatedX, int segmentId) {
-        this.rotatedX = rotatedX;
-        this.segmentId = segmentId;
-    }
-}
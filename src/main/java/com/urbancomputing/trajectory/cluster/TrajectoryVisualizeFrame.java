@@ -1,14 +1,14 @@
 package com.urbancomputing.trajectory.cluster;
 
-import com.sun.deploy.panel.JavaPanel;
-import com.urbancomputing.trajectory.model.Point;
 import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentStore;
 import com.urbancomputing.trajectory.model.Trajectory;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
 import java.util.List;
 
 /**
@@ -18,6 +18,10 @@ import java.util.List;
  * @date 2021/11/8
  */
 public class TrajectoryVisualizeFrame extends JFrame {
+    /**
+     * size of the drawing in pixels
+     */
+    private static final int WIDTH = 1200, HEIGHT = 900;
     /**
      * raw trajectories
      */
@@ -37,52 +41,33 @@ public class TrajectoryVisualizeFrame extends JFrame {
         this.representativeTrajs = representativeTrajs;
     }
 
+    /**
+     * show the trajectories rendered offscreen by {@link TrajectoryRenderer}, use the renderer directly where there is
+     * no display
+     */
     public void draw() {
         // initialize
-        JPanel p = new JavaPanel();
-        this.setBounds(200, 200, 1200, 900);
+        TrajectoryRenderer renderer = new TrajectoryRenderer(rawTrajs, segments == null ? null : SegmentStore.of(segments),
+                representativeTrajs);
+        BufferedImage image = renderer.render(renderer.fitViewport(WIDTH, HEIGHT));
+        JPanel p = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                g.drawImage(image, 0, 0, null);
+            }
+        };
+        p.setPreferredSize(new Dimension(WIDTH, HEIGHT));
         this.setContentPane(p);
+        this.pack();
+        this.setLocation(200, 200);
         this.setTitle("Trajectory Visualization: Green is raw trajs, Blue are partitioned segments, Red are representative trajs -- Zisheng Yu");
-        this.setVisible(true);
-        this.setResizable(true);
+        this.setResizable(false);
         this.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {
                 System.exit(0);
             }
         });
-        Graphics g = p.getGraphics();
-        p.paint(g);
-
-        // draw raw trajs
-        if (rawTrajs != null) {
-            for (Trajectory traj : rawTrajs) {
-                for (int i = 0; i < traj.getPointNumber() - 1; i++) {
-                    Point startPoint = traj.getPoint(i);
-                    Point endPoint = traj.getPoint(i + 1);
-                    g.setColor(Color.GREEN);
-                    g.drawLine((int) startPoint.getLng(), (int) startPoint.getLat(), (int) endPoint.getLng(), (int) endPoint.getLat());
-                }
-            }
-        }
-        // draw partitioned segments
-        if (segments != null) {
-            for (int i = 0; i < segments.size() - 1; i++) {
-                Point startPoint = segments.get(i).getStartPoint();
-                Point endPoint = segments.get(i + 1).getEndPoint();
-                g.setColor(Color.BLUE);
-                g.drawLine((int) startPoint.getLng(), (int) startPoint.getLat(), (int) endPoint.getLng(), (int) endPoint.getLat());
-            }
-        }
-        // draw representative trajs
-        if (representativeTrajs != null) {
-            for (Trajectory traj : representativeTrajs) {
-                for (int i = 0; i < traj.getPointNumber() - 1; i++) {
-                    Point startPoint = traj.getPoint(i);
-                    Point endPoint = traj.getPoint(i + 1);
-                    g.setColor(Color.RED);
-                    g.drawLine((int) startPoint.getLng(), (int) startPoint.getLat(), (int) endPoint.getLng(), (int) endPoint.getLat());
-                }
-            }
-        }
+        this.setVisible(true);
     }
 }
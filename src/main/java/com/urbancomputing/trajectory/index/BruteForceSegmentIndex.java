@@ -0,0 +1,29 @@
+package com.urbancomputing.trajectory.index;
+
+import com.urbancomputing.trajectory.model.SegmentAccess;
+
+import java.util.function.IntConsumer;
+
+/**
+ * reference index which reports every segment for every query, i.e. the full scan of the original dbscan
+ *
+ * @author yuzisheng
+ * @date 2021/11/20
+ */
+public class BruteForceSegmentIndex implements SegmentIndex {
+    /**
+     * indexed segments
+     */
+    private final SegmentAccess store;
+
+    public BruteForceSegmentIndex(SegmentAccess store) {
+        this.store = store;
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        for (int j = 0; j < store.size(); j++) {
+            consumer.accept(j);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.urbancomputing.trajectory.index;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * uniform grid over segment bounding boxes which accepts segments appended to its store after construction, cells
+ * are kept in a hash map so the grid has no fixed extent
+ *
+ * @author yuzisheng
+ * @date 2021/11/26
+ */
+public class DynamicGridSegmentIndex implements SegmentIndex {
+    /**
+     * relative slack added to every query to absorb rounding of the segment distance
+     */
+    private static final double ROUNDING_SLACK = 1e-9;
+    /**
+     * indexed segments
+     */
+    private final SegmentStore store;
+    private final double cellSize;
+    /**
+     * segment ids registered in each non-empty cell
+     */
+    private final HashMap<Long, IntList> cells = new HashMap<>();
+    /**
+     * largest absolute coordinate seen so far, scales the query slack
+     */
+    private double maxAbsCoord;
+
+    public DynamicGridSegmentIndex(SegmentStore store, double cellSize) {
+        this.store = store;
+        this.cellSize = cellSize > 0.0 ? cellSize : 1.0;
+    }
+
+    /**
+     * register segment i of the store
+     */
+    public void add(int i) {
+        for (long cy = cell(store.getMinY(i)); cy <= cell(store.getMaxY(i)); cy++) {
+            for (long cx = cell(store.getMinX(i)); cx <= cell(store.getMaxX(i)); cx++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new IntList(4)).add(i);
+            }
+        }
+        maxAbsCoord = Math.max(maxAbsCoord, Math.max(Math.max(Math.abs(store.getMinX(i)), Math.abs(store.getMaxX(i))),
+                Math.max(Math.abs(store.getMinY(i)), Math.abs(store.getMaxY(i)))));
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        double slack = ROUNDING_SLACK * (1.0 + maxAbsCoord);
+        double qMinX = minX - slack, qMinY = minY - slack;
+        double qMaxX = maxX + slack, qMaxY = maxY + slack;
+        long cx0 = cell(qMinX), cx1 = cell(qMaxX);
+        long cy0 = cell(qMinY), cy1 = cell(qMaxY);
+        for (long cy = cy0; cy <= cy1; cy++) {
+            for (long cx = cx0; cx <= cx1; cx++) {
+                IntList items = cells.get(key(cx, cy));
+                if (items == null) {
+                    continue;
+                }
+                for (int k = 0; k < items.size(); k++) {
+                    int j = items.get(k);
+                    if (store.getMinX(j) > qMaxX || store.getMaxX(j) < qMinX || store.getMinY(j) > qMaxY || store.getMaxY(j) < qMinY) {
+                        continue;
+                    }
+                    // a segment spanning several cells is only reported from the first cell shared with the query
+                    if (cx == Math.max(cell(store.getMinX(j)), cx0) && cy == Math.max(cell(store.getMinY(j)), cy0)) {
+                        consumer.accept(j);
+                    }
+                }
+            }
+        }
+    }
+
+    private long cell(double v) {
+        return (long) Math.floor(v / cellSize);
+    }
+
+    private static long key(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+}
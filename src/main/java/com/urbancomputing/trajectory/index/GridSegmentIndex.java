@@ -0,0 +1,150 @@
+package com.urbancomputing.trajectory.index;
+
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.util.OffHeapBuffers;
+
+import java.nio.IntBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * uniform grid over segment bounding boxes, each segment is registered in every cell its bounding box covers
+ *
+ * @author yuzisheng
+ * @date 2021/11/20
+ */
+public class GridSegmentIndex implements SegmentIndex {
+    /**
+     * upper bound of cell number per indexed segment, the cell size grows until the grid fits
+     */
+    private static final int MAX_CELLS_PER_SEGMENT = 4;
+    /**
+     * relative slack added to every query to absorb rounding of the segment distance
+     */
+    private static final double ROUNDING_SLACK = 1e-9;
+    /**
+     * indexed segments
+     */
+    private final SegmentAccess store;
+    /**
+     * grid origin, cell size and shape
+     */
+    private final double originX, originY, cellSize;
+    private final int cols, rows;
+    /**
+     * absolute slack added to every query box
+     */
+    private final double slack;
+    /**
+     * segment ids of cell c are cellItems[cellStart[c]] ... cellItems[cellStart[c + 1] - 1]
+     */
+    private final IntBuffer cellStart;
+    private final IntBuffer cellItems;
+
+    /**
+     * build a grid index
+     *
+     * @param store    segments to index, ids are their positions in the store
+     * @param cellSize preferred cell size, usually the search radius of the queries
+     */
+    public GridSegmentIndex(SegmentAccess store, double cellSize) {
+        this(store, cellSize, false);
+    }
+
+    /**
+     * build a grid index whose cells are kept outside the java heap if offHeap is set
+     */
+    public GridSegmentIndex(SegmentAccess store, double cellSize, boolean offHeap) {
+        this.store = store;
+        int n = store.size();
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, store.getMinX(i));
+            minY = Math.min(minY, store.getMinY(i));
+            maxX = Math.max(maxX, store.getMaxX(i));
+            maxY = Math.max(maxY, store.getMaxY(i));
+        }
+        if (n == 0) {
+            minX = minY = maxX = maxY = 0.0;
+        }
+        double width = maxX - minX, height = maxY - minY;
+        double size = cellSize > 0.0 ? cellSize : Math.max(1.0, Math.max(width, height));
+        while ((width / size + 1) * (height / size + 1) > (double) MAX_CELLS_PER_SEGMENT * n + 16) {
+            size *= 2;
+        }
+        this.originX = minX;
+        this.originY = minY;
+        this.cellSize = size;
+        this.cols = (int) (width / size) + 1;
+        this.rows = (int) (height / size) + 1;
+        this.slack = ROUNDING_SLACK * (1.0 + Math.max(Math.max(Math.abs(minX), Math.abs(maxX)),
+                Math.max(Math.abs(minY), Math.abs(maxY))));
+
+        // counting sort of segment ids into cells
+        cellStart = OffHeapBuffers.allocateInts(cols * rows + 1, offHeap);
+        for (int i = 0; i < n; i++) {
+            for (int cy = cellY(store.getMinY(i)); cy <= cellY(store.getMaxY(i)); cy++) {
+                for (int cx = cellX(store.getMinX(i)); cx <= cellX(store.getMaxX(i)); cx++) {
+                    int c = cy * cols + cx;
+                    cellStart.put(c, cellStart.get(c) + 1);
+                }
+            }
+        }
+        // cellStart[c] is the end of cell c until the items are placed
+        for (int c = 1; c <= cols * rows; c++) {
+            cellStart.put(c, cellStart.get(c) + cellStart.get(c - 1));
+        }
+        cellItems = OffHeapBuffers.allocateInts(cellStart.get(cols * rows), offHeap);
+        // placing from the last segment counts every cellStart[c] down to the start of cell c in ascending order
+        for (int i = n - 1; i >= 0; i--) {
+            for (int cy = cellY(store.getMinY(i)); cy <= cellY(store.getMaxY(i)); cy++) {
+                for (int cx = cellX(store.getMinX(i)); cx <= cellX(store.getMaxX(i)); cx++) {
+                    int c = cy * cols + cx;
+                    int position = cellStart.get(c) - 1;
+                    cellStart.put(c, position);
+                    cellItems.put(position, i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        double qMinX = minX - slack, qMinY = minY - slack;
+        double qMaxX = maxX + slack, qMaxY = maxY + slack;
+        int cx0 = cellX(qMinX), cx1 = cellX(qMaxX);
+        int cy0 = cellY(qMinY), cy1 = cellY(qMaxY);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cols + cx;
+                for (int k = cellStart.get(c), end = cellStart.get(c + 1); k < end; k++) {
+                    int j = cellItems.get(k);
+                    if (store.getMinX(j) > qMaxX || store.getMaxX(j) < qMinX || store.getMinY(j) > qMaxY || store.getMaxY(j) < qMinY) {
+                        continue;
+                    }
+                    // a segment spanning several cells is only reported from the first cell shared with the query
+                    if (cx == Math.max(cellX(store.getMinX(j)), cx0) && cy == Math.max(cellY(store.getMinY(j)), cy0)) {
+                        consumer.accept(j);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * bytes of the cells, on the heap or outside it
+     */
+    public long getMemoryBytes() {
+        return (long) Integer.BYTES * (cellStart.capacity() + cellItems.capacity());
+    }
+
+    private int cellX(double x) {
+        int cx = (int) ((x - originX) / cellSize);
+        return cx < 0 ? 0 : (cx >= cols ? cols - 1 : cx);
+    }
+
+    private int cellY(double y) {
+        int cy = (int) ((y - originY) / cellSize);
+        return cy < 0 ? 0 : (cy >= rows ? rows - 1 : cy);
+    }
+}
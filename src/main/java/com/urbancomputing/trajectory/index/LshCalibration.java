@@ -0,0 +1,198 @@
+package com.urbancomputing.trajectory.index;
+
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.util.IntHashSet;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSearchRadius;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+
+/**
+ * sampled segments with their exact eps neighborhoods to choose the tables of a {@link LshSegmentIndex} for a recall
+ * and to estimate how well a clustering on the approximate neighborhoods agrees with the exact one
+ * <p>
+ * the exact neighborhoods are evaluated in one pass over the store with a grid over the queries instead of a grid
+ * over the store, the distances of the last step are counted
+ *
+ * @author yuzisheng
+ * @date 2021/12/3
+ */
+public class LshCalibration {
+    private final SegmentAccess store;
+    private final double eps;
+    private final long seed;
+    private final int[] sample;
+    private final int[][] sampleNeighborhoods;
+    private double estimatedRecall = 1.0;
+    private long distanceEvaluationNum;
+
+    /**
+     * draw sampleSize segments with replacement and evaluate their exact neighborhoods
+     */
+    public LshCalibration(SegmentAccess store, double eps, int sampleSize, long seed) {
+        this.store = store;
+        this.eps = eps;
+        this.seed = seed;
+        int n = store.size();
+        Random random = new Random(seed);
+        sample = new int[Math.min(sampleSize, n)];
+        for (int s = 0; s < sample.length; s++) {
+            sample[s] = random.nextInt(n);
+        }
+        distanceEvaluationNum = 0L;
+        sampleNeighborhoods = computeExactNeighborhoods(sample);
+    }
+
+    /**
+     * build the fewest hash tables reaching the target recall on the pairs of the first half of the sample and
+     * estimate the recall on the pairs of the other half
+     */
+    public LshSegmentIndex buildIndex(double targetRecall) {
+        LshSegmentIndex index = new LshSegmentIndex(store, eps, seed);
+        // pairs of the calibration and of the held-out half by the first table holding both segments
+        int calibrationNum = (sample.length + 1) / 2;
+        long[][] pairNums = new long[2][LshSegmentIndex.MAX_TABLE_NUM + 1];
+        for (int s = 0; s < sample.length; s++) {
+            for (int j : sampleNeighborhoods[s]) {
+                if (j != sample[s]) {
+                    pairNums[s < calibrationNum ? 0 : 1][index.getFirstCollidingTable(sample[s], j)]++;
+                }
+            }
+        }
+        long calibrationPairNum = 0L, heldOutPairNum = 0L;
+        for (int t = 0; t <= LshSegmentIndex.MAX_TABLE_NUM; t++) {
+            calibrationPairNum += pairNums[0][t];
+            heldOutPairNum += pairNums[1][t];
+        }
+        int tableNum = 0;
+        long foundPairNum = 0L, heldOutFoundPairNum = 0L;
+        do {
+            heldOutFoundPairNum += pairNums[1][tableNum];
+            foundPairNum += pairNums[0][tableNum++];
+        } while (tableNum < LshSegmentIndex.MAX_TABLE_NUM && foundPairNum < targetRecall * calibrationPairNum);
+        estimatedRecall = heldOutPairNum == 0L ? 1.0 : (double) heldOutFoundPairNum / heldOutPairNum;
+        index.build(tableNum);
+        return index;
+    }
+
+    /**
+     * share of the pairs within eps of the held-out half of the sample found by the last built index
+     */
+    public double getEstimatedRecall() {
+        return estimatedRecall;
+    }
+
+    /**
+     * share of the sampled segments labelled as by the exact run, a sampled core segment agrees if it shares its
+     * cluster with all core segments of its exact neighborhood, a sampled border segment if it is in a cluster and a
+     * sampled noise segment if it stays noise
+     * <p>
+     * a neighbor found to be core on the approximate neighborhoods is an exact core since those are subsets of the
+     * exact ones, the exact neighborhoods of the other neighbors are only evaluated if their core flag decides the
+     * agreement of a sampled segment, i.e. for neighbors of a core segment in another cluster and for neighbors of a
+     * segment without a core neighbor found by the approximate run
+     *
+     * @param labels          cluster id of each segment, noise is -1
+     * @param approximateCore whether a segment is core on the approximate neighborhoods
+     */
+    public double estimateLabelAgreement(IntBuffer labels, IntPredicate approximateCore, int minNum) {
+        IntHashSet uncertain = new IntHashSet();
+        IntList uncertainList = new IntList();
+        for (int s = 0; s < sample.length; s++) {
+            int i = sample[s];
+            int[] exactNeighbors = sampleNeighborhoods[s];
+            boolean core = exactNeighbors.length >= minNum;
+            boolean decided = core && labels.get(i) < 0;
+            for (int k = 0; !decided && k < exactNeighbors.length; k++) {
+                int j = exactNeighbors[k];
+                decided = approximateCore.test(j) && (!core || labels.get(j) != labels.get(i));
+            }
+            for (int k = 0; !decided && k < exactNeighbors.length; k++) {
+                int j = exactNeighbors[k];
+                if ((!core || labels.get(j) != labels.get(i)) && uncertain.add(j)) {
+                    uncertainList.add(j);
+                }
+            }
+        }
+        int[] queries = uncertainList.toArray();
+        distanceEvaluationNum = 0L;
+        int[][] uncertainNeighborhoods = computeExactNeighborhoods(queries);
+        IntHashSet exactCores = new IntHashSet();
+        for (int k = 0; k < queries.length; k++) {
+            if (uncertainNeighborhoods[k].length >= minNum) {
+                exactCores.add(queries[k]);
+            }
+        }
+        int agreementNum = 0;
+        for (int s = 0; s < sample.length; s++) {
+            int i = sample[s];
+            int[] exactNeighbors = sampleNeighborhoods[s];
+            boolean agrees;
+            if (exactNeighbors.length >= minNum) {
+                agrees = labels.get(i) >= 0;
+                for (int k = 0; agrees && k < exactNeighbors.length; k++) {
+                    int j = exactNeighbors[k];
+                    if (approximateCore.test(j) || exactCores.contains(j)) {
+                        agrees = labels.get(j) == labels.get(i);
+                    }
+                }
+            } else {
+                boolean border = false;
+                for (int k = 0; !border && k < exactNeighbors.length; k++) {
+                    border = approximateCore.test(exactNeighbors[k]) || exactCores.contains(exactNeighbors[k]);
+                }
+                agrees = border == labels.get(i) >= 0;
+            }
+            if (agrees) {
+                agreementNum++;
+            }
+        }
+        return sample.length == 0 ? 1.0 : (double) agreementNum / sample.length;
+    }
+
+    /**
+     * segment pairs whose distance is evaluated by the constructor or by the last label agreement estimate
+     */
+    public long getDistanceEvaluationNumber() {
+        return distanceEvaluationNum;
+    }
+
+    /**
+     * exact eps neighborhoods of a few segments, every segment looks up the queries within the search radius of it in
+     * a grid over the queries
+     */
+    private int[][] computeExactNeighborhoods(int[] queries) {
+        SegmentStore queryStore = new SegmentStore(queries.length);
+        IntList[] neighborhoods = new IntList[queries.length];
+        for (int k = 0; k < queries.length; k++) {
+            int i = queries[k];
+            queryStore.add(store.getX1(i), store.getY1(i), store.getX2(i), store.getY2(i), store.getTid(i));
+            neighborhoods[k] = new IntList();
+        }
+        double radius = computeSearchRadius(eps);
+        GridSegmentIndex queryIndex = new GridSegmentIndex(queryStore, radius);
+        IntList hits = new IntList();
+        for (int j = 0; j < store.size(); j++) {
+            hits.clear();
+            queryIndex.query(store.getMinX(j) - radius, store.getMinY(j) - radius,
+                    store.getMaxX(j) + radius, store.getMaxY(j) + radius, hits::add);
+            distanceEvaluationNum += hits.size();
+            for (int h = 0; h < hits.size(); h++) {
+                int k = hits.get(h);
+                if (computeSegmentToSegmentDistance(store, queries[k], j) <= eps) {
+                    neighborhoods[k].add(j);
+                }
+            }
+        }
+        int[][] result = new int[queries.length][];
+        for (int k = 0; k < queries.length; k++) {
+            result[k] = neighborhoods[k].toArray();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+package com.urbancomputing.trajectory.index;
+
+import com.urbancomputing.trajectory.model.SegmentAccess;
+import com.urbancomputing.trajectory.util.IntHashSet;
+import com.urbancomputing.trajectory.util.IntList;
+
+import java.util.Random;
+
+/**
+ * locality sensitive hash tables over segments for approximate eps neighborhoods, candidates of a segment are the
+ * segments sharing a bucket with it in any table, so segments within eps are found with a probability growing with the
+ * number of tables instead of for sure
+ * <p>
+ * every table quantizes both endpoints of a segment on a grid of cells shifted by random offsets of its own, a segment
+ * falls into the buckets of its endpoint cells, the tables are drawn up front and only the first tableNum are built,
+ * see {@link #getFirstCollidingTable(int, int)} to choose tableNum for a recall
+ * <p>
+ * the endpoints are enough since a pair within eps has an endpoint of the shorter segment within its parallel distance
+ * along and twice its perpendicular distance across the line of the longer one from an endpoint of the longer one, so
+ * at most 2 eps apart, direction and length are not hashed since segments shorter than eps are within eps of segments
+ * of any direction and length
+ * <p>
+ * buckets of a table are kept in primitive arrays, cell keys in open addressing slots and the segment ids of all buckets
+ * in one array ordered by slot
+ *
+ * @author yuzisheng
+ * @date 2021/12/3
+ */
+public class LshSegmentIndex {
+    /**
+     * number of tables drawn up front
+     */
+    public static final int MAX_TABLE_NUM = 32;
+    /**
+     * cell size in eps
+     */
+    static final double CELL_FACTOR = 1.0;
+
+    private final SegmentAccess store;
+    private final double cellSize;
+    /**
+     * random offsets of x and y per table, in cells
+     */
+    private final double[][] offsets = new double[MAX_TABLE_NUM][2];
+    /**
+     * per built table, the cell key of each open addressing slot and the segment ids of the bucket in slot s at
+     * items[slotStart[s]] ... items[slotStart[s + 1] - 1], an empty slot holds no segment
+     */
+    private long[][] slotKeys;
+    private int[][] slotStarts;
+    private int[][] items;
+    private int tableNum;
+
+    public LshSegmentIndex(SegmentAccess store, double eps, long seed) {
+        this.store = store;
+        this.cellSize = eps > 0.0 ? CELL_FACTOR * eps : 1.0;
+        Random random = new Random(seed);
+        for (double[] tableOffsets : offsets) {
+            tableOffsets[0] = random.nextDouble();
+            tableOffsets[1] = random.nextDouble();
+        }
+    }
+
+    /**
+     * first table with a bucket holding both segments, MAX_TABLE_NUM if none, the pair is a candidate pair of every
+     * index with more tables than that
+     */
+    public int getFirstCollidingTable(int i, int j) {
+        for (int t = 0; t < MAX_TABLE_NUM; t++) {
+            long i1 = key(t, store.getX1(i), store.getY1(i)), i2 = key(t, store.getX2(i), store.getY2(i));
+            long j1 = key(t, store.getX1(j), store.getY1(j)), j2 = key(t, store.getX2(j), store.getY2(j));
+            if (i1 == j1 || i1 == j2 || i2 == j1 || i2 == j2) {
+                return t;
+            }
+        }
+        return MAX_TABLE_NUM;
+    }
+
+    /**
+     * hash all segments of the store into the first tableNum tables
+     */
+    public void build(int tableNum) {
+        int n = store.size();
+        this.tableNum = Math.min(Math.max(tableNum, 1), MAX_TABLE_NUM);
+        slotKeys = new long[this.tableNum][];
+        slotStarts = new int[this.tableNum][];
+        items = new int[this.tableNum][];
+        for (int t = 0; t < this.tableNum; t++) {
+            // count the segments per cell, slots double whenever they are half full
+            long[] keys = new long[16];
+            int[] counts = new int[keys.length];
+            int cellNum = 0;
+            for (int i = 0; i < n; i++) {
+                long key1 = key(t, store.getX1(i), store.getY1(i)), key2 = key(t, store.getX2(i), store.getY2(i));
+                for (int e = 0; e < (key1 == key2 ? 1 : 2); e++) {
+                    if (2 * (cellNum + 1) > keys.length) {
+                        long[] oldKeys = keys;
+                        int[] oldCounts = counts;
+                        keys = new long[2 * oldKeys.length];
+                        counts = new int[keys.length];
+                        for (int s = 0; s < oldKeys.length; s++) {
+                            if (oldCounts[s] > 0) {
+                                int slot = findCountSlot(keys, counts, oldKeys[s]);
+                                keys[slot] = oldKeys[s];
+                                counts[slot] = oldCounts[s];
+                            }
+                        }
+                    }
+                    long key = e == 0 ? key1 : key2;
+                    int slot = findCountSlot(keys, counts, key);
+                    if (counts[slot] == 0) {
+                        keys[slot] = key;
+                        cellNum++;
+                    }
+                    counts[slot]++;
+                }
+            }
+            // starts[s] is the end of the bucket in slot s until the items are placed
+            int[] starts = new int[keys.length + 1];
+            for (int s = 0; s < keys.length; s++) {
+                starts[s + 1] = starts[s] + counts[s];
+            }
+            System.arraycopy(starts, 1, starts, 0, keys.length);
+            int[] tableItems = new int[starts[keys.length]];
+            // placing from the last segment counts every end down to the start of its bucket in ascending order
+            for (int i = n - 1; i >= 0; i--) {
+                long key1 = key(t, store.getX1(i), store.getY1(i)), key2 = key(t, store.getX2(i), store.getY2(i));
+                tableItems[--starts[findCountSlot(keys, counts, key1)]] = i;
+                if (key2 != key1) {
+                    tableItems[--starts[findCountSlot(keys, counts, key2)]] = i;
+                }
+            }
+            slotKeys[t] = keys;
+            slotStarts[t] = starts;
+            items[t] = tableItems;
+        }
+    }
+
+    public int getTableNum() {
+        return tableNum;
+    }
+
+    /**
+     * bytes of the built tables
+     */
+    public long getMemoryBytes() {
+        long bytes = 0L;
+        for (int t = 0; t < tableNum; t++) {
+            bytes += (long) Long.BYTES * slotKeys[t].length + (long) Integer.BYTES * (slotStarts[t].length + items[t].length);
+        }
+        return bytes;
+    }
+
+    /**
+     * candidates of segment i including itself without duplicates, visited is a scratch set of the caller
+     */
+    public void query(int i, IntHashSet visited, IntList candidates) {
+        candidates.clear();
+        visited.clear();
+        for (int t = 0; t < tableNum; t++) {
+            long key1 = key(t, store.getX1(i), store.getY1(i)), key2 = key(t, store.getX2(i), store.getY2(i));
+            addBucket(t, key1, visited, candidates);
+            if (key2 != key1) {
+                addBucket(t, key2, visited, candidates);
+            }
+        }
+    }
+
+    private void addBucket(int t, long key, IntHashSet visited, IntList candidates) {
+        long[] keys = slotKeys[t];
+        int[] starts = slotStarts[t], tableItems = items[t];
+        int mask = keys.length - 1;
+        for (int slot = firstSlot(key, mask); starts[slot] < starts[slot + 1]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                for (int k = starts[slot], end = starts[slot + 1]; k < end; k++) {
+                    int j = tableItems[k];
+                    if (visited.add(j)) {
+                        candidates.add(j);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * slot of a key while counting, or the empty slot ending its probe sequence
+     */
+    private static int findCountSlot(long[] keys, int[] counts, long key) {
+        int mask = keys.length - 1;
+        int slot = firstSlot(key, mask);
+        while (counts[slot] > 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int firstSlot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & mask;
+    }
+
+    /**
+     * key of the cell holding a point in table t, cell coordinates are packed exactly for coordinates below 2^31 cells
+     */
+    private long key(int t, double x, double y) {
+        long cx = (long) Math.floor(x / cellSize + offsets[t][0]);
+        long cy = (long) Math.floor(y / cellSize + offsets[t][1]);
+        return cx << 32 ^ (cy & 0xFFFFFFFFL);
+    }
+}
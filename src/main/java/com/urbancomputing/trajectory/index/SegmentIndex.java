@@ -0,0 +1,24 @@
+package com.urbancomputing.trajectory.index;
+
+import java.util.function.IntConsumer;
+
+/**
+ * spatial index over the bounding boxes of segments
+ *
+ * @author yuzisheng
+ * @date 2021/11/20
+ */
+public interface SegmentIndex {
+    /**
+     * report the id of every indexed segment whose bounding box intersects the query box, each id exactly once and in
+     * no particular order; an implementation may also report segments outside the box
+     *
+     * @param minX     min x of query box, usually a segment bounding box expanded by
+     *                 {@link com.urbancomputing.trajectory.cluster.TrajectoryDistance#computeSearchRadius}
+     * @param minY     min y of query box
+     * @param maxX     max x of query box
+     * @param maxY     max y of query box
+     * @param consumer receives the ids of candidate segments
+     */
+    void query(double minX, double minY, double maxX, double maxY, IntConsumer consumer);
+}
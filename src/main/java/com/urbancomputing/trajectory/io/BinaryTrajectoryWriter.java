@@ -0,0 +1,120 @@
+package com.urbancomputing.trajectory.io;
+
+import com.urbancomputing.trajectory.model.Trajectory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * writer of the binary trajectory file read by {@link MappedTrajectoryReader}, all numbers are little endian
+ * <pre>
+ * header      magic (int), version (int), trajectory number (long), tid block offset (long), index offset (long)
+ * coordinates x (double), y (double) of every point, trajectory after trajectory
+ * tid block   utf-8 bytes of every trajectory id
+ * index       first point (long), point number (int), tid length (int), tid offset in the tid block (long)
+ *             of every trajectory
+ * </pre>
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class BinaryTrajectoryWriter implements Closeable {
+    static final int MAGIC = 0x424a5254;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int POINT_BYTES = 16;
+    static final int INDEX_ENTRY_BYTES = 24;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * index entries and trajectory ids kept until the coordinates are written
+     */
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream tids = new ByteArrayOutputStream();
+    private long trajNum;
+    private long pointNum;
+
+    public BinaryTrajectoryWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_BYTES);
+    }
+
+    public void write(Trajectory traj) throws IOException {
+        int n = traj.getPointNumber();
+        for (int i = 0; i < n; i++) {
+            if (buffer.remaining() < POINT_BYTES) {
+                flush();
+            }
+            buffer.putDouble(traj.getX(i));
+            buffer.putDouble(traj.getY(i));
+        }
+        writeIndexEntry(traj.getTid(), n);
+    }
+
+    /**
+     * write the first pointNumber coordinates of the arrays as one trajectory
+     */
+    public void write(String tid, double[] xs, double[] ys, int pointNumber) throws IOException {
+        for (int i = 0; i < pointNumber; i++) {
+            if (buffer.remaining() < POINT_BYTES) {
+                flush();
+            }
+            buffer.putDouble(xs[i]);
+            buffer.putDouble(ys[i]);
+        }
+        writeIndexEntry(tid, pointNumber);
+    }
+
+    private void writeIndexEntry(String trajId, int n) throws IOException {
+        byte[] tid = trajId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putLong(pointNum).putInt(n).putInt(tid.length).putLong(tids.size());
+        index.write(entry.array());
+        tids.write(tid);
+        pointNum += n;
+        trajNum++;
+    }
+
+    /**
+     * append the tid block and the index and complete the header
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            long tidOffset = channel.position();
+            writeFully(ByteBuffer.wrap(tids.toByteArray()));
+            long indexOffset = channel.position();
+            writeFully(ByteBuffer.wrap(index.toByteArray()));
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(trajNum).putLong(tidOffset).putLong(indexOffset);
+            header.flip();
+            channel.position(0);
+            writeFully(header);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
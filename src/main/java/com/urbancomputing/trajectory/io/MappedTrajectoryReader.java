@@ -0,0 +1,172 @@
+package com.urbancomputing.trajectory.io;
+
+import com.urbancomputing.trajectory.model.Point;
+import com.urbancomputing.trajectory.model.Trajectory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.urbancomputing.trajectory.io.BinaryTrajectoryWriter.*;
+
+/**
+ * memory mapped reader of the binary trajectory file written by {@link BinaryTrajectoryWriter}, trajectories are views
+ * reading their coordinates from the mapping on demand
+ * <p>
+ * the mapping is released by the garbage collector once the reader and all its trajectories are unreachable
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class MappedTrajectoryReader implements Closeable, Iterable<Trajectory> {
+    /**
+     * coordinates are mapped in chunks since one mapping is limited to 2 GB, a multiple of the point size
+     */
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final FileChannel channel;
+    private final int trajNum;
+    private final ByteBuffer index;
+    private final ByteBuffer tids;
+    private final ByteBuffer[] coordChunks;
+
+    public MappedTrajectoryReader(File file) throws Exception {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = map(0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new Exception(file + " is not a binary trajectory file of version " + VERSION);
+            }
+            long trajNumber = header.getLong(8);
+            long tidOffset = header.getLong(16);
+            long indexOffset = header.getLong(24);
+            if (trajNumber > Integer.MAX_VALUE / INDEX_ENTRY_BYTES || indexOffset + trajNumber * INDEX_ENTRY_BYTES != channel.size()) {
+                throw new Exception(file + " is truncated or its index is too large");
+            }
+            trajNum = (int) trajNumber;
+            index = map(indexOffset, trajNum * INDEX_ENTRY_BYTES);
+            tids = map(tidOffset, indexOffset - tidOffset);
+            long coordBytes = tidOffset - HEADER_BYTES;
+            coordChunks = new ByteBuffer[(int) ((coordBytes + CHUNK_BYTES - 1) / CHUNK_BYTES)];
+            for (int c = 0; c < coordChunks.length; c++) {
+                long from = (long) c * CHUNK_BYTES;
+                coordChunks[c] = map(HEADER_BYTES + from, Math.min(CHUNK_BYTES, coordBytes - from));
+            }
+        } catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getTrajectoryNumber() {
+        return trajNum;
+    }
+
+    public Trajectory getTrajectory(int k) {
+        int entry = k * INDEX_ENTRY_BYTES;
+        byte[] tid = new byte[index.getInt(entry + 12)];
+        ByteBuffer tidView = tids.duplicate();
+        tidView.position((int) index.getLong(entry + 16));
+        tidView.get(tid);
+        return new MappedTrajectory(new String(tid, StandardCharsets.UTF_8), index.getLong(entry), index.getInt(entry + 8));
+    }
+
+    /**
+     * views of all trajectories, ready for {@link com.urbancomputing.trajectory.cluster.TrajectoryCluster}
+     */
+    public ArrayList<Trajectory> getTrajectories() {
+        ArrayList<Trajectory> trajs = new ArrayList<>(trajNum);
+        for (int k = 0; k < trajNum; k++) {
+            trajs.add(getTrajectory(k));
+        }
+        return trajs;
+    }
+
+    @Override
+    public Iterator<Trajectory> iterator() {
+        return new Iterator<Trajectory>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < trajNum;
+            }
+
+            @Override
+            public Trajectory next() {
+                if (next >= trajNum) {
+                    throw new NoSuchElementException();
+                }
+                return getTrajectory(next++);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    double getCoord(long point, int dim) {
+        long offset = point * POINT_BYTES + dim * 8;
+        return coordChunks[(int) (offset / CHUNK_BYTES)].getDouble((int) (offset % CHUNK_BYTES));
+    }
+
+    private ByteBuffer map(long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * trajectory backed by the coordinates of the mapping
+     */
+    private class MappedTrajectory extends Trajectory {
+        private final long firstPoint;
+        private final int pointNumber;
+
+        MappedTrajectory(String tid, long firstPoint, int pointNumber) {
+            super(tid);
+            this.firstPoint = firstPoint;
+            this.pointNumber = pointNumber;
+        }
+
+        @Override
+        public int getPointNumber() {
+            return pointNumber;
+        }
+
+        @Override
+        public Point getPoint(int i) {
+            return new Point(getX(i), getY(i));
+        }
+
+        @Override
+        public double getX(int i) {
+            return getCoord(firstPoint + i, 0);
+        }
+
+        @Override
+        public double getY(int i) {
+            return getCoord(firstPoint + i, 1);
+        }
+
+        /**
+         * copy of the points, prefer the point getters
+         */
+        @Override
+        public ArrayList<Point> getPoints() {
+            ArrayList<Point> points = new ArrayList<>(pointNumber);
+            for (int i = 0; i < pointNumber; i++) {
+                points.add(getPoint(i));
+            }
+            return points;
+        }
+    }
+}
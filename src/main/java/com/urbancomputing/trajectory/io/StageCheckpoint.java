@@ -0,0 +1,451 @@
+package com.urbancomputing.trajectory.io;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * checkpoint files of the partition and dbscan stages, keyed by the fingerprint of the input trajectories and the
+ * parameters of the stage, all numbers are little endian
+ * <pre>
+ * header      magic (int), version (int), key length (int), utf-8 bytes of the key
+ * partition   segment number (int), characteristic point number (long), trajectory number (int),
+ *             utf-8 length (int) and bytes of every trajectory id, then x1, y1, x2, y2 (double) and trajectory
+ *             index (int) of every segment
+ * dbscan      segment number (int), cluster number (int), core segment number (int), label (int) of every segment
+ * </pre>
+ * a checkpoint is written to a scratch file and moved into place once complete, a file whose key, magic or version
+ * differs or which is truncated or corrupt is ignored, so the stage is computed again and the file overwritten
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class StageCheckpoint {
+    static final int PARTITION_MAGIC = 0x50435254;
+    static final int DBSCAN_MAGIC = 0x4c435254;
+    static final int VERSION = 1;
+
+    /**
+     * segments of the partition stage
+     */
+    public static class PartitionResult {
+        SegmentStore segments;
+        long characteristicPointNum;
+
+        public SegmentStore getSegments() {
+            return segments;
+        }
+
+        public long getCharacteristicPointNumber() {
+            return characteristicPointNum;
+        }
+    }
+
+    /**
+     * labels of the dbscan stage
+     */
+    public static class DBScanResult {
+        int[] labels;
+        int clusterNum;
+        int corePointNum;
+
+        /**
+         * cluster id of each segment, noise is -1
+         */
+        public int[] getLabels() {
+            return labels;
+        }
+
+        public int getClusterNum() {
+            return clusterNum;
+        }
+
+        public int getCorePointNumber() {
+            return corePointNum;
+        }
+    }
+
+    private final File directory;
+    private final String fingerprint;
+
+    /**
+     * checkpoints of the given trajectories in directory, the fingerprint is computed once here
+     */
+    public StageCheckpoint(File directory, List<? extends Trajectory> trajs) {
+        this.directory = directory;
+        this.fingerprint = fingerprint(trajs);
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * sha-256 over the ids and coordinates of the trajectories in order, as a hex string
+     */
+    public static String fingerprint(List<? extends Trajectory> trajs) {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(trajs.size());
+        for (Trajectory traj : trajs) {
+            byte[] tid = traj.getTid().getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 2 * Integer.BYTES + tid.length) {
+                update(digest, buffer);
+            }
+            buffer.putInt(tid.length);
+            if (buffer.remaining() < Integer.BYTES + tid.length) {
+                // an id longer than the buffer
+                update(digest, buffer);
+                digest.update(tid);
+            } else {
+                buffer.put(tid);
+            }
+            buffer.putInt(traj.getPointNumber());
+            for (int i = 0; i < traj.getPointNumber(); i++) {
+                if (buffer.remaining() < 2 * Double.BYTES) {
+                    update(digest, buffer);
+                }
+                buffer.putDouble(traj.getX(i)).putDouble(traj.getY(i));
+            }
+        }
+        update(digest, buffer);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * segments saved with the same input and parameters, null if there is none
+     */
+    public PartitionResult loadPartition(String parameters) throws Exception {
+        try (CheckpointInput in = open(PARTITION_MAGIC, "partition", parameters)) {
+            if (in == null) {
+                return null;
+            }
+            int segmentNum = in.getCount(4 * Double.BYTES + Integer.BYTES);
+            PartitionResult result = new PartitionResult();
+            result.characteristicPointNum = in.getLong();
+            String[] tids = new String[in.getCount(Integer.BYTES)];
+            for (int t = 0; t < tids.length; t++) {
+                tids[t] = in.getString();
+            }
+            result.segments = new SegmentStore(segmentNum);
+            for (int i = 0; i < segmentNum; i++) {
+                double x1 = in.getDouble(), y1 = in.getDouble(), x2 = in.getDouble(), y2 = in.getDouble();
+                int trajIndex = in.getInt();
+                if (trajIndex < 0 || trajIndex >= tids.length) {
+                    throw new CorruptCheckpointException(in.getFile() + " is corrupted");
+                }
+                result.segments.add(x1, y1, x2, y2, tids[trajIndex]);
+            }
+            return result;
+        } catch (CorruptCheckpointException e) {
+            return null;
+        }
+    }
+
+    public void savePartition(String parameters, SegmentStore segments, long characteristicPointNum) throws IOException {
+        File file = File.createTempFile("partition", ".tmp", directory);
+        try (CheckpointOutput out = new CheckpointOutput(file)) {
+            writeHeader(out, PARTITION_MAGIC, parameters);
+            out.putInt(segments.size());
+            out.putLong(characteristicPointNum);
+            // trajectory indexes of the store are in order of first appearance
+            int trajNum = segments.getTrajNumber();
+            out.putInt(trajNum);
+            int nextTraj = 0;
+            for (int i = 0; i < segments.size() && nextTraj < trajNum; i++) {
+                if (segments.getTrajIndex(i) == nextTraj) {
+                    out.putString(segments.getTid(i));
+                    nextTraj++;
+                }
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                out.putDouble(segments.getX1(i));
+                out.putDouble(segments.getY1(i));
+                out.putDouble(segments.getX2(i));
+                out.putDouble(segments.getY2(i));
+                out.putInt(segments.getTrajIndex(i));
+            }
+        } catch (IOException e) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            throw e;
+        }
+        moveIntoPlace(file, "partition", parameters);
+    }
+
+    /**
+     * labels saved with the same input and parameters, null if there is none
+     */
+    public DBScanResult loadDBScan(String parameters) throws Exception {
+        try (CheckpointInput in = open(DBSCAN_MAGIC, "dbscan", parameters)) {
+            if (in == null) {
+                return null;
+            }
+            DBScanResult result = new DBScanResult();
+            result.labels = new int[in.getCount(Integer.BYTES)];
+            result.clusterNum = in.getInt();
+            result.corePointNum = in.getInt();
+            for (int i = 0; i < result.labels.length; i++) {
+                result.labels[i] = in.getInt();
+            }
+            return result;
+        } catch (CorruptCheckpointException e) {
+            return null;
+        }
+    }
+
+    public void saveDBScan(String parameters, int[] labels, int clusterNum, int corePointNum) throws IOException {
+        File file = File.createTempFile("dbscan", ".tmp", directory);
+        try (CheckpointOutput out = new CheckpointOutput(file)) {
+            writeHeader(out, DBSCAN_MAGIC, parameters);
+            out.putInt(labels.length);
+            out.putInt(clusterNum);
+            out.putInt(corePointNum);
+            for (int label : labels) {
+                out.putInt(label);
+            }
+        } catch (IOException e) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            throw e;
+        }
+        moveIntoPlace(file, "dbscan", parameters);
+    }
+
+    /**
+     * checkpoint file of a stage, named by the hash of its key
+     */
+    File getFile(String stage, String parameters) {
+        MessageDigest digest = sha256();
+        digest.update(getKey(parameters).getBytes(StandardCharsets.UTF_8));
+        return new File(directory, stage + "-" + toHex(digest.digest()).substring(0, 32) + ".ckpt");
+    }
+
+    private String getKey(String parameters) {
+        return fingerprint + "\n" + parameters;
+    }
+
+    private CheckpointInput open(int magic, String stage, String parameters) throws Exception {
+        File file = getFile(stage, parameters);
+        if (!file.isFile()) {
+            return null;
+        }
+        CheckpointInput in = new CheckpointInput(file);
+        try {
+            // a file of another format, e.g. written before a version bump, is a miss like one of another key
+            if (in.getInt() != magic || in.getInt() != VERSION || !in.getString().equals(getKey(parameters))) {
+                in.close();
+                return null;
+            }
+            return in;
+        } catch (CorruptCheckpointException e) {
+            in.close();
+            return null;
+        } catch (Exception e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private void writeHeader(CheckpointOutput out, int magic, String parameters) throws IOException {
+        out.putInt(magic);
+        out.putInt(VERSION);
+        out.putString(getKey(parameters));
+    }
+
+    private void moveIntoPlace(File file, String stage, String parameters) throws IOException {
+        Files.move(file.toPath(), getFile(stage, parameters).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void update(MessageDigest digest, ByteBuffer buffer) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform supports sha-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
+
+/**
+ * buffered little endian writer of a checkpoint file
+ */
+class CheckpointOutput implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    CheckpointOutput(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    void putInt(int value) throws IOException {
+        reserve(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        reserve(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    void putDouble(double value) throws IOException {
+        reserve(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    void putString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        for (int offset = 0; offset < bytes.length; ) {
+            reserve(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
+
+/**
+ * buffered little endian reader of a checkpoint file
+ */
+class CheckpointInput implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    CheckpointInput(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer.flip();
+    }
+
+    int getInt() throws IOException {
+        require(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        require(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    double getDouble() throws IOException {
+        require(Double.BYTES);
+        return buffer.getDouble();
+    }
+
+    /**
+     * a number of items of at least itemBytes each which fit into the rest of the file
+     */
+    int getCount(int itemBytes) throws IOException {
+        int count = getInt();
+        if (count < 0 || (long) count * itemBytes > channel.size() - channel.position() + buffer.remaining()) {
+            throw new CorruptCheckpointException(file + " is corrupted");
+        }
+        return count;
+    }
+
+    String getString() throws IOException {
+        int length = getCount(1);
+        byte[] bytes = new byte[length];
+        for (int offset = 0; offset < length; ) {
+            require(1);
+            int chunk = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void require(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new CorruptCheckpointException(file + " is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
+
+/**
+ * checkpoint file which ends early or holds impossible counts, read as a missing checkpoint
+ */
+class CorruptCheckpointException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CorruptCheckpointException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,326 @@
+package com.urbancomputing.trajectory.io;
+
+import com.urbancomputing.trajectory.model.ArrayTrajectory;
+import com.urbancomputing.trajectory.model.Trajectory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * streaming parser of the text trajectory file, one trajectory per line as "tid pointNumber x y x y ..." separated by
+ * whitespace
+ * <p>
+ * numbers are parsed straight from the bytes of the buffer, the id is the only object allocated per trajectory by
+ * {@link #next(TrajectoryConsumer)}
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class TextTrajectoryParser implements Closeable, Iterable<Trajectory> {
+    /**
+     * receives one trajectory, the coordinate arrays are reused by the next trajectory
+     */
+    @FunctionalInterface
+    public interface TrajectoryConsumer {
+        void accept(String tid, double[] xs, double[] ys, int pointNumber) throws Exception;
+    }
+
+    private static final int BUFFER_BYTES = 1 << 20;
+    /**
+     * largest mantissa and power of ten converted exactly by one floating point operation
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    /**
+     * source of the buffer, null if the buffer holds the whole input
+     */
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private boolean endOfInput;
+    private int lineNumber;
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+
+    /**
+     * parse the remaining bytes of a buffer, e.g. a mapped file
+     */
+    public TextTrajectoryParser(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer;
+        this.endOfInput = true;
+    }
+
+    /**
+     * parse a channel through a growing buffer which always holds a whole line
+     */
+    public TextTrajectoryParser(ReadableByteChannel channel) {
+        this(channel, BUFFER_BYTES);
+    }
+
+    TextTrajectoryParser(ReadableByteChannel channel, int bufferBytes) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferBytes);
+        this.buffer.flip();
+    }
+
+    public static TextTrajectoryParser open(File file) throws IOException {
+        return new TextTrajectoryParser(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * parse the next trajectory
+     *
+     * @return false if no trajectory is left
+     */
+    public boolean next(TrajectoryConsumer consumer) throws Exception {
+        while (true) {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                return false;
+            }
+            lineNumber++;
+            int pos = skipWhitespace(buffer.position(), lineEnd);
+            if (pos == lineEnd) {
+                buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+                continue;
+            }
+            int tokenEnd = findTokenEnd(pos, lineEnd);
+            String tid = decode(pos, tokenEnd);
+            pos = skipWhitespace(tokenEnd, lineEnd);
+            tokenEnd = findTokenEnd(pos, lineEnd);
+            int pointNumber = parseInt(pos, tokenEnd);
+            int valueNum = 0;
+            for (pos = skipWhitespace(tokenEnd, lineEnd); pos < lineEnd; pos = skipWhitespace(tokenEnd, lineEnd)) {
+                tokenEnd = findTokenEnd(pos, lineEnd);
+                if (valueNum < 2L * pointNumber) {
+                    // the arrays grow with the coordinates on the line, a declared count is only checked afterwards
+                    if (valueNum >> 1 == xs.length) {
+                        xs = Arrays.copyOf(xs, xs.length * 2);
+                        ys = Arrays.copyOf(ys, xs.length);
+                    }
+                    double value = parseDouble(pos, tokenEnd);
+                    if ((valueNum & 1) == 0) {
+                        xs[valueNum >> 1] = value;
+                    } else {
+                        ys[valueNum >> 1] = value;
+                    }
+                }
+                valueNum++;
+            }
+            if (valueNum != 2L * pointNumber) {
+                throw new Exception("line " + lineNumber + ": trajectory " + tid + " declares " + pointNumber
+                        + " points but holds " + valueNum + " coordinates");
+            }
+            buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+            consumer.accept(tid, xs, ys, pointNumber);
+            return true;
+        }
+    }
+
+    /**
+     * parse the next trajectory into its own arrays
+     *
+     * @return null if no trajectory is left
+     */
+    public Trajectory next() throws Exception {
+        Trajectory[] traj = new Trajectory[1];
+        if (!next((tid, xs, ys, pointNumber) ->
+                traj[0] = new ArrayTrajectory(tid, Arrays.copyOf(xs, pointNumber), Arrays.copyOf(ys, pointNumber)))) {
+            return null;
+        }
+        return traj[0];
+    }
+
+    /**
+     * trajectories one at a time, parse errors are rethrown as {@link IllegalStateException}
+     */
+    @Override
+    public Iterator<Trajectory> iterator() {
+        return new Iterator<Trajectory>() {
+            private Trajectory next = advance();
+
+            private Trajectory advance() {
+                try {
+                    return TextTrajectoryParser.this.next();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Trajectory next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Trajectory traj = next;
+                next = advance();
+                return traj;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * end of the current line, reading more input until the buffer holds the whole line
+     *
+     * @return index of the line feed or the limit of the last line, -1 if the input is exhausted
+     */
+    private int findLineEnd() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            for (int i = scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+            if (endOfInput) {
+                return buffer.hasRemaining() ? buffer.limit() : -1;
+            }
+            // keep the partial line, grow the buffer when the line fills all of it
+            scanned = buffer.remaining();
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer);
+            }
+            if (channel.read(buffer) < 0) {
+                endOfInput = true;
+            }
+            buffer.flip();
+        }
+    }
+
+    private int skipWhitespace(int pos, int end) {
+        while (pos < end && isWhitespace(buffer.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int findTokenEnd(int pos, int end) {
+        while (pos < end && !isWhitespace(buffer.get(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    private int parseInt(int from, int to) throws Exception {
+        if (from == to || to - from > 9) {
+            throw new Exception("line " + lineNumber + ": invalid point number " + decode(from, to));
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new Exception("line " + lineNumber + ": invalid point number " + decode(from, to));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * decimal mantissa and exponent are collected from the bytes, a mantissa below 2^53 with an exponent within 22
+     * is converted by one correctly rounded multiplication or division, anything else falls back to the jdk
+     */
+    private double parseDouble(int from, int to) throws Exception {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0, exponent = 0;
+        boolean hasDigits = false, exact = true;
+        for (; i < to && isDigit(buffer.get(i)); i++) {
+            hasDigits = true;
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + (buffer.get(i) - '0');
+                if (mantissa != 0) significantDigits++;
+            } else {
+                exact = false;
+            }
+        }
+        if (i < to && buffer.get(i) == '.') {
+            for (i++; i < to && isDigit(buffer.get(i)); i++) {
+                hasDigits = true;
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (buffer.get(i) - '0');
+                    if (mantissa != 0) significantDigits++;
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (hasDigits && i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            int exponentValue = 0;
+            int exponentStart = i;
+            for (; i < to && isDigit(buffer.get(i)); i++) {
+                exponentValue = Math.min(exponentValue * 10 + (buffer.get(i) - '0'), 100000);
+            }
+            exact &= i > exponentStart;
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+        if (exact && hasDigits && i == to && mantissa <= MAX_EXACT_MANTISSA && Math.abs(exponent) < POWERS_OF_TEN.length) {
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(decode(from, to));
+        } catch (NumberFormatException e) {
+            throw new Exception("line " + lineNumber + ": invalid coordinate " + decode(from, to));
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private String decode(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = from; i < to; i++) {
+            bytes[i - from] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
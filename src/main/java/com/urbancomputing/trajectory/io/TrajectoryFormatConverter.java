@@ -0,0 +1,32 @@
+package com.urbancomputing.trajectory.io;
+
+import java.io.File;
+
+/**
+ * converts the text trajectory file, one trajectory per line as "tid pointNumber x y x y ...", to the binary file
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class TrajectoryFormatConverter {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new Exception("usage: TrajectoryFormatConverter <text file> <binary file>");
+        }
+        System.out.println(convertTextToBinary(new File(args[0]), new File(args[1])) + " trajectories converted");
+    }
+
+    /**
+     * @return number of trajectories converted
+     */
+    public static long convertTextToBinary(File text, File binary) throws Exception {
+        long trajNum = 0;
+        try (TextTrajectoryParser parser = TextTrajectoryParser.open(text);
+             BinaryTrajectoryWriter writer = new BinaryTrajectoryWriter(binary)) {
+            while (parser.next((tid, xs, ys, pointNumber) -> writer.write(tid, xs, ys, pointNumber))) {
+                trajNum++;
+            }
+        }
+        return trajNum;
+    }
+}
@@ -0,0 +1,52 @@
+package com.urbancomputing.trajectory.model;
+
+import java.util.ArrayList;
+
+/**
+ * trajectory backed by primitive coordinate arrays instead of point objects
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class ArrayTrajectory extends Trajectory {
+    private final double[] xs;
+    private final double[] ys;
+
+    public ArrayTrajectory(String tid, double[] xs, double[] ys) {
+        super(tid);
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    @Override
+    public int getPointNumber() {
+        return xs.length;
+    }
+
+    @Override
+    public Point getPoint(int i) {
+        return new Point(xs[i], ys[i]);
+    }
+
+    @Override
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    @Override
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * copy of the points, prefer the point getters
+     */
+    @Override
+    public ArrayList<Point> getPoints() {
+        ArrayList<Point> points = new ArrayList<>(xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            points.add(getPoint(i));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,203 @@
+package com.urbancomputing.trajectory.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * segment store kept outside the java heap, one fixed size row per segment in chunks of direct buffers or of a memory
+ * mapped scratch file, so the heap only holds the distinct trajectory ids whatever the number of segments
+ * <p>
+ * lengths and bounding boxes are derived as in {@link SegmentStore#add}, the mapping of a file is released
+ * by the garbage collector once the store is unreachable
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class OffHeapSegmentStore implements SegmentAccess, Closeable {
+    /**
+     * row layout: x1, y1, x2, y2, length, min x, min y, max x, max y as doubles then trajectory index, padded to keep
+     * the doubles of the next row aligned
+     */
+    private static final int X1 = 0, Y1 = 8, X2 = 16, Y2 = 24, LENGTH = 32;
+    private static final int MIN_X = 40, MIN_Y = 48, MAX_X = 56, MAX_Y = 64, TRAJ_INDEX = 72;
+    static final int ROW_BYTES = 80;
+    /**
+     * rows per chunk, a power of two so that a chunk stays below the 2 GB limit of one buffer
+     */
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    /**
+     * scratch file channel, null for direct buffers
+     */
+    private final FileChannel channel;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int size;
+    /**
+     * distinct trajectory ids in order of first appearance
+     */
+    private final ArrayList<String> tids = new ArrayList<>();
+    private final HashMap<String, Integer> tidIndex = new HashMap<>();
+
+    /**
+     * store rows in direct buffers
+     */
+    public OffHeapSegmentStore() {
+        this.channel = null;
+    }
+
+    /**
+     * store rows in a memory mapped scratch file, any content of the file is overwritten
+     */
+    public OffHeapSegmentStore(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * append a segment
+     *
+     * @return index of the appended segment
+     */
+    public int add(double startX, double startY, double endX, double endY, String tid) throws IOException {
+        if (size == Integer.MAX_VALUE) {
+            throw new IOException("off-heap segment store is full");
+        }
+        int i = size;
+        if ((i >>> CHUNK_SHIFT) == chunks.length) {
+            addChunk();
+        }
+        ByteBuffer chunk = chunks[i >>> CHUNK_SHIFT];
+        int row = (i & CHUNK_MASK) * ROW_BYTES;
+        double dx = endX - startX, dy = endY - startY;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        chunk.putDouble(row + X1, startX);
+        chunk.putDouble(row + Y1, startY);
+        chunk.putDouble(row + X2, endX);
+        chunk.putDouble(row + Y2, endY);
+        chunk.putDouble(row + LENGTH, length);
+        chunk.putDouble(row + MIN_X, Math.min(startX, endX));
+        chunk.putDouble(row + MIN_Y, Math.min(startY, endY));
+        chunk.putDouble(row + MAX_X, Math.max(startX, endX));
+        chunk.putDouble(row + MAX_Y, Math.max(startY, endY));
+        chunk.putInt(row + TRAJ_INDEX, indexOfTid(tid));
+        size++;
+        return i;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double getX1(int i) {
+        return getDouble(i, X1);
+    }
+
+    @Override
+    public double getY1(int i) {
+        return getDouble(i, Y1);
+    }
+
+    @Override
+    public double getX2(int i) {
+        return getDouble(i, X2);
+    }
+
+    @Override
+    public double getY2(int i) {
+        return getDouble(i, Y2);
+    }
+
+    @Override
+    public double getLength(int i) {
+        return getDouble(i, LENGTH);
+    }
+
+    @Override
+    public double getMinX(int i) {
+        return getDouble(i, MIN_X);
+    }
+
+    @Override
+    public double getMinY(int i) {
+        return getDouble(i, MIN_Y);
+    }
+
+    @Override
+    public double getMaxX(int i) {
+        return getDouble(i, MAX_X);
+    }
+
+    @Override
+    public double getMaxY(int i) {
+        return getDouble(i, MAX_Y);
+    }
+
+    @Override
+    public int getTrajIndex(int i) {
+        return chunks[i >>> CHUNK_SHIFT].getInt((i & CHUNK_MASK) * ROW_BYTES + TRAJ_INDEX);
+    }
+
+    @Override
+    public String getTid(int i) {
+        return tids.get(getTrajIndex(i));
+    }
+
+    @Override
+    public int getTrajNumber() {
+        return tids.size();
+    }
+
+    /**
+     * close the scratch file, the store must not be used afterwards
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private double getDouble(int i, int column) {
+        return chunks[i >>> CHUNK_SHIFT].getDouble((i & CHUNK_MASK) * ROW_BYTES + column);
+    }
+
+    private void addChunk() throws IOException {
+        int chunkBytes = CHUNK_ROWS * ROW_BYTES;
+        ByteBuffer chunk;
+        if (channel == null) {
+            chunk = ByteBuffer.allocateDirect(chunkBytes);
+        } else {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunks.length * chunkBytes, chunkBytes);
+        }
+        chunk.order(ByteOrder.nativeOrder());
+        chunks = Arrays.copyOf(chunks, chunks.length + 1);
+        chunks[chunks.length - 1] = chunk;
+    }
+
+    private int indexOfTid(String tid) {
+        int last = tids.size() - 1;
+        // segments of one trajectory usually arrive together
+        if (last >= 0 && tids.get(last).equals(tid)) {
+            return last;
+        }
+        Integer index = tidIndex.get(tid);
+        if (index == null) {
+            index = tids.size();
+            tids.add(tid);
+            tidIndex.put(tid, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,64 @@
+package com.urbancomputing.trajectory.model;
+
+/**
+ * read access to partitioned segments by position, implemented by the heap columns of {@link SegmentStore} and the
+ * off-heap rows of {@link OffHeapSegmentStore}
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public interface SegmentAccess {
+    int size();
+
+    double getX1(int i);
+
+    double getY1(int i);
+
+    double getX2(int i);
+
+    double getY2(int i);
+
+    /**
+     * same order as {@link Segment#getCoord(int)}: start x, start y, end x, end y
+     */
+    default double getCoord(int i, int k) {
+        if (k == 0) {
+            return getX1(i);
+        } else if (k == 1) {
+            return getY1(i);
+        } else if (k == 2) {
+            return getX2(i);
+        } else {
+            return getY2(i);
+        }
+    }
+
+    double getLength(int i);
+
+    double getMinX(int i);
+
+    double getMinY(int i);
+
+    double getMaxX(int i);
+
+    double getMaxY(int i);
+
+    /**
+     * index of the trajectory containing segment i, in [0, getTrajNumber())
+     */
+    int getTrajIndex(int i);
+
+    String getTid(int i);
+
+    /**
+     * number of distinct trajectories
+     */
+    int getTrajNumber();
+
+    /**
+     * materialize segment i as an object
+     */
+    default Segment getSegment(int i) {
+        return new Segment(new Point(getX1(i), getY1(i)), new Point(getX2(i), getY2(i)), getTid(i));
+    }
+}
@@ -0,0 +1,212 @@
+package com.urbancomputing.trajectory.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * columnar segment store, coordinates and per-segment features are kept in parallel primitive arrays
+ *
+ * @author yuzisheng
+ * @date 2021/11/22
+ */
+public class SegmentStore implements SegmentAccess {
+    /**
+     * number of segments
+     */
+    private int size;
+    /**
+     * coordinates of start and end points
+     */
+    private double[] x1, y1, x2, y2;
+    /**
+     * cached length
+     */
+    private double[] length;
+    /**
+     * cached bounding box
+     */
+    private double[] minX, minY, maxX, maxY;
+    /**
+     * index of the trajectory containing each segment
+     */
+    private int[] trajIndex;
+    /**
+     * distinct trajectory ids in order of first appearance
+     */
+    private final ArrayList<String> tids = new ArrayList<>();
+    private final HashMap<String, Integer> tidIndex = new HashMap<>();
+
+    public SegmentStore() {
+        this(16);
+    }
+
+    public SegmentStore(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * copy segments into a new store
+     */
+    public static SegmentStore of(List<Segment> segments) {
+        SegmentStore store = new SegmentStore(segments.size());
+        for (Segment s : segments) {
+            store.add(s.getCoord(0), s.getCoord(1), s.getCoord(2), s.getCoord(3), s.getTid());
+        }
+        return store;
+    }
+
+    /**
+     * append a segment
+     *
+     * @return index of the appended segment
+     */
+    public int add(double startX, double startY, double endX, double endY, String tid) {
+        if (size == x1.length) {
+            grow(size + (size >> 1) + 1);
+        }
+        int i = size++;
+        x1[i] = startX;
+        y1[i] = startY;
+        x2[i] = endX;
+        y2[i] = endY;
+        double dx = endX - startX, dy = endY - startY;
+        length[i] = Math.sqrt(dx * dx + dy * dy);
+        minX[i] = Math.min(startX, endX);
+        minY[i] = Math.min(startY, endY);
+        maxX[i] = Math.max(startX, endX);
+        maxY[i] = Math.max(startY, endY);
+        trajIndex[i] = indexOfTid(tid);
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX1(int i) {
+        return x1[i];
+    }
+
+    public double getY1(int i) {
+        return y1[i];
+    }
+
+    public double getX2(int i) {
+        return x2[i];
+    }
+
+    public double getY2(int i) {
+        return y2[i];
+    }
+
+    /**
+     * same order as {@link Segment#getCoord(int)}: start x, start y, end x, end y
+     */
+    public double getCoord(int i, int k) {
+        if (k == 0) {
+            return x1[i];
+        } else if (k == 1) {
+            return y1[i];
+        } else if (k == 2) {
+            return x2[i];
+        } else {
+            return y2[i];
+        }
+    }
+
+    public double getLength(int i) {
+        return length[i];
+    }
+
+    public double getMinX(int i) {
+        return minX[i];
+    }
+
+    public double getMinY(int i) {
+        return minY[i];
+    }
+
+    public double getMaxX(int i) {
+        return maxX[i];
+    }
+
+    public double getMaxY(int i) {
+        return maxY[i];
+    }
+
+    /**
+     * index of the trajectory containing segment i, in [0, getTrajNumber())
+     */
+    public int getTrajIndex(int i) {
+        return trajIndex[i];
+    }
+
+    public String getTid(int i) {
+        return tids.get(trajIndex[i]);
+    }
+
+    /**
+     * number of distinct trajectories
+     */
+    public int getTrajNumber() {
+        return tids.size();
+    }
+
+    /**
+     * materialize segment i as an object
+     */
+    public Segment getSegment(int i) {
+        return new Segment(new Point(x1[i], y1[i]), new Point(x2[i], y2[i]), getTid(i));
+    }
+
+    public ArrayList<Segment> toSegments() {
+        ArrayList<Segment> segments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            segments.add(getSegment(i));
+        }
+        return segments;
+    }
+
+    private int indexOfTid(String tid) {
+        int last = tids.size() - 1;
+        // segments of one trajectory usually arrive together
+        if (last >= 0 && tids.get(last).equals(tid)) {
+            return last;
+        }
+        Integer index = tidIndex.get(tid);
+        if (index == null) {
+            index = tids.size();
+            tids.add(tid);
+            tidIndex.put(tid, index);
+        }
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        x1 = new double[capacity];
+        y1 = new double[capacity];
+        x2 = new double[capacity];
+        y2 = new double[capacity];
+        length = new double[capacity];
+        minX = new double[capacity];
+        minY = new double[capacity];
+        maxX = new double[capacity];
+        maxY = new double[capacity];
+        trajIndex = new int[capacity];
+    }
+
+    private void grow(int capacity) {
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        length = Arrays.copyOf(length, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        trajIndex = Arrays.copyOf(trajIndex, capacity);
+    }
+}
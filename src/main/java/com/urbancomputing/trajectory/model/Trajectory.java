@@ -2,6 +2,7 @@ package com.urbancomputing.trajectory.model;
 
 import java.util.ArrayList;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Trajectory Class
@@ -24,6 +25,14 @@ public class Trajectory {
         this.points = points;
     }
 
+    /**
+     * trajectory whose points are supplied by a subclass overriding the point getters
+     */
+    protected Trajectory(String tid) {
+        this.tid = tid;
+        this.points = null;
+    }
+
     public int getPointNumber() {
         return points.size();
     }
@@ -32,6 +41,14 @@ public class Trajectory {
         return points.get(i);
     }
 
+    public double getX(int i) {
+        return points.get(i).getLng();
+    }
+
+    public double getY(int i) {
+        return points.get(i).getLat();
+    }
+
     public String getTid() {
         return tid;
     }
@@ -43,8 +60,8 @@ public class Trajectory {
     @Override
     public String toString() {
         return "LINESTRING (" +
-                points.stream()
-                        .map(pt -> pt.getLng() + " " + pt.getLat())
+                IntStream.range(0, getPointNumber())
+                        .mapToObj(i -> getX(i) + " " + getY(i))
                         .collect(Collectors.joining(", ")) + ")";
     }
 }
@@ -0,0 +1,52 @@
+package com.urbancomputing.trajectory.util;
+
+/**
+ * sort of primitive indexes by primitive keys
+ *
+ * @author yuzisheng
+ * @date 2021/11/25
+ */
+public class IndexSort {
+    private static final int INSERTION_SORT_LENGTH = 16;
+
+    /**
+     * stable sort of indexes[0, length) ascending by keys[index] in the order of {@link Double#compare}
+     */
+    public static void sort(int[] indexes, int length, double[] keys) {
+        int[] buffer = new int[length];
+        for (int from = 0; from < length; from += INSERTION_SORT_LENGTH) {
+            insertionSort(indexes, from, Math.min(from + INSERTION_SORT_LENGTH, length), keys);
+        }
+        // bottom-up merge of sorted runs, swapping source and target every pass
+        int[] source = indexes, target = buffer;
+        for (int width = INSERTION_SORT_LENGTH; width < length; width *= 2) {
+            for (int from = 0; from < length; from += 2 * width) {
+                int mid = Math.min(from + width, length), to = Math.min(from + 2 * width, length);
+                int left = from, right = mid, k = from;
+                while (left < mid && right < to) {
+                    target[k++] = Double.compare(keys[source[right]], keys[source[left]]) < 0 ? source[right++] : source[left++];
+                }
+                while (left < mid) target[k++] = source[left++];
+                while (right < to) target[k++] = source[right++];
+            }
+            int[] temp = source;
+            source = target;
+            target = temp;
+        }
+        if (source != indexes) {
+            System.arraycopy(source, 0, indexes, 0, length);
+        }
+    }
+
+    private static void insertionSort(int[] indexes, int from, int to, double[] keys) {
+        for (int i = from + 1; i < to; i++) {
+            int index = indexes[i];
+            int j = i - 1;
+            while (j >= from && Double.compare(keys[indexes[j]], keys[index]) > 0) {
+                indexes[j + 1] = indexes[j];
+                j--;
+            }
+            indexes[j + 1] = index;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.urbancomputing.trajectory.util;
+
+import java.util.Arrays;
+
+/**
+ * binary min heap of ids in [0, capacity) keyed by an external key array, supporting decrease key
+ *
+ * @author yuzisheng
+ * @date 2021/12/1
+ */
+public class IndexedMinHeap {
+    private final double[] keys;
+    private final int[] heap;
+    /**
+     * position of each id in the heap, -1 if absent
+     */
+    private final int[] positions;
+    private int size;
+
+    /**
+     * @param keys key of each id, read on every comparison and only to be lowered through {@link #decrease}
+     */
+    public IndexedMinHeap(double[] keys) {
+        this.keys = keys;
+        this.heap = new int[keys.length];
+        this.positions = new int[keys.length];
+        Arrays.fill(positions, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return positions[id] >= 0;
+    }
+
+    public void insert(int id, double key) {
+        keys[id] = key;
+        heap[size] = id;
+        positions[id] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * lower the key of an id in the heap
+     */
+    public void decrease(int id, double key) {
+        keys[id] = key;
+        siftUp(positions[id]);
+    }
+
+    public int poll() {
+        int id = heap[0];
+        positions[id] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return id;
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[heap[parent]] <= keys[id]) {
+                break;
+            }
+            heap[i] = heap[parent];
+            positions[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        positions[id] = i;
+    }
+
+    private void siftDown(int i) {
+        int id = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if (keys[id] <= keys[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            positions[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = id;
+        positions[id] = i;
+    }
+}
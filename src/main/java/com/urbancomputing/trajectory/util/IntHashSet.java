@@ -0,0 +1,82 @@
+package com.urbancomputing.trajectory.util;
+
+import java.util.Arrays;
+
+/**
+ * open addressing set of non-negative primitive ints, meant to be cleared and reused
+ *
+ * @author yuzisheng
+ * @date 2021/12/3
+ */
+public class IntHashSet {
+    private static final int EMPTY = -1;
+    private int[] slots;
+    private int size;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int capacity) {
+        slots = new int[Integer.highestOneBit(Math.max(capacity, 4) - 1) << 2];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * @return whether the value was not in the set yet
+     */
+    public boolean add(int value) {
+        if (2 * (size + 1) > slots.length) {
+            rehash(2 * slots.length);
+        }
+        int mask = slots.length - 1;
+        for (int s = slot(value, mask); ; s = (s + 1) & mask) {
+            if (slots[s] == EMPTY) {
+                slots[s] = value;
+                size++;
+                return true;
+            }
+            if (slots[s] == value) {
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(int value) {
+        int mask = slots.length - 1;
+        for (int s = slot(value, mask); slots[s] != EMPTY; s = (s + 1) & mask) {
+            if (slots[s] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(slots, EMPTY);
+            size = 0;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldSlots = slots;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        for (int value : oldSlots) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    private static int slot(int value, int mask) {
+        int h = value * 0x9E3779B9;
+        return (h ^ h >>> 16) & mask;
+    }
+}
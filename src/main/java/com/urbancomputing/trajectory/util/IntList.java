@@ -0,0 +1,57 @@
+package com.urbancomputing.trajectory.util;
+
+import java.util.Arrays;
+
+/**
+ * growable list of primitive ints, meant to be cleared and reused
+ *
+ * @author yuzisheng
+ * @date 2021/11/23
+ */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    public void addAll(int[] array) {
+        if (size + array.length > values.length) {
+            values = Arrays.copyOf(values, Math.max(size + array.length, size + (size >> 1) + 1));
+        }
+        System.arraycopy(array, 0, values, size, array.length);
+        size += array.length;
+    }
+
+    public int get(int i) {
+        return values[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,77 @@
+package com.urbancomputing.trajectory.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * zeroed primitive buffers either backed by a heap array, allocated outside the java heap or mapped to a spill file
+ *
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class OffHeapBuffers {
+    private OffHeapBuffers() {
+    }
+
+    public static IntBuffer allocateInts(int n, boolean offHeap) {
+        if (!offHeap) {
+            return IntBuffer.allocate(n);
+        }
+        return ByteBuffer.allocateDirect(Math.multiplyExact(n, Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    public static LongBuffer allocateLongs(int n, boolean offHeap) {
+        if (!offHeap) {
+            return LongBuffer.allocate(n);
+        }
+        return ByteBuffer.allocateDirect(Math.multiplyExact(n, Long.BYTES)).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    /**
+     * ints mapped to a new scratch file in directory, pages are written back to the file by the operating system under
+     * memory pressure, the file is unlinked right away where mapped files can be deleted and its space is freed once the
+     * buffer is unreachable
+     */
+    public static IntBuffer mapInts(File directory, int n) throws IOException {
+        return map(directory, (long) n * Integer.BYTES).asIntBuffer();
+    }
+
+    public static LongBuffer mapLongs(File directory, int n) throws IOException {
+        return map(directory, (long) n * Long.BYTES).asLongBuffer();
+    }
+
+    private static ByteBuffer map(File directory, long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("can not map " + bytes + " bytes to one buffer");
+        }
+        File file = File.createTempFile("spill", ".bin", directory);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * contents of a buffer as an int array, the backing array itself for a heap buffer
+     */
+    public static int[] toArray(IntBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == buffer.capacity()) {
+            return buffer.array();
+        }
+        int[] array = new int[buffer.capacity()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = buffer.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,49 @@
+package com.urbancomputing.trajectory.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * fork join task which splits an index range until it is short enough and hands the pieces to a consumer
+ *
+ * @author yuzisheng
+ * @date 2021/11/24
+ */
+public class ParallelRange extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * consumer of a piece [from, to) of the range
+     */
+    @FunctionalInterface
+    public interface RangeConsumer {
+        void accept(int from, int to);
+    }
+
+    private final int from, to, minLength;
+    private final RangeConsumer consumer;
+
+    private ParallelRange(int from, int to, int minLength, RangeConsumer consumer) {
+        this.from = from;
+        this.to = to;
+        this.minLength = minLength;
+        this.consumer = consumer;
+    }
+
+    /**
+     * run the consumer over pieces of [from, to) no longer than minLength on the pool and wait for all of them
+     */
+    public static void forEach(ForkJoinPool pool, int from, int to, int minLength, RangeConsumer consumer) {
+        pool.invoke(new ParallelRange(from, to, Math.max(minLength, 1), consumer));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= minLength) {
+            consumer.accept(from, to);
+        } else {
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParallelRange(from, mid, minLength, consumer), new ParallelRange(mid, to, minLength, consumer));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * approximate segment cluster test
+ *
+ * @author yuzisheng
+ * @date 2021/12/3
+ */
+public class ApproximateTrajectoryDBScanTest {
+    /**
+     * slack of the recall estimated on the held-out half of the sample
+     */
+    static final double RECALL_TOLERANCE = 0.03;
+
+    @Test
+    public void approximationReachesTargetRecall() throws Exception {
+        SegmentStore segments = new TrajectoryPartition(getTestData("/elk_1993.txt"), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+        for (double eps : DBSCAN_EPS_IN_M) {
+            TrajectoryDBScan exact = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+            exact.cluster();
+            TrajectoryDBScan approximate = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+            approximate.setApproximation(0.95, 500);
+            approximate.cluster();
+            assertTrue(approximate.getDistanceEvaluationNumber() < exact.getDistanceEvaluationNumber());
+
+            // recall over the pairs of all exact neighborhoods, the approximate neighborhoods are subsets of them
+            int[][] neighborhoods = exact.computeNeighborhoods();
+            TrajectoryDBScan approximateNeighborhoods = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+            approximateNeighborhoods.setApproximation(0.95, 500);
+            int[][] approximateNeighbors = approximateNeighborhoods.computeNeighborhoods();
+            long pairNum = 0L, foundPairNum = 0L;
+            for (int i = 0; i < segments.size(); i++) {
+                int[] exactNeighbors = neighborhoods[i].clone();
+                Arrays.sort(exactNeighbors);
+                for (int j : approximateNeighbors[i]) {
+                    assertTrue(Arrays.binarySearch(exactNeighbors, j) >= 0);
+                }
+                pairNum += exactNeighbors.length - 1;
+                foundPairNum += approximateNeighbors[i].length - 1;
+            }
+            double recall = (double) foundPairNum / pairNum;
+            assertTrue(recall >= 0.95 - RECALL_TOLERANCE);
+            assertEquals(recall, approximate.getEstimatedRecall(), RECALL_TOLERANCE);
+
+            // label agreement over all segments as estimated on the sample
+            int[] labels = approximate.getLabels();
+            int agreementNum = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                boolean agrees = true, border = false;
+                for (int j : neighborhoods[i]) {
+                    if (exact.isCore(j)) {
+                        border = true;
+                        agrees &= !exact.isCore(i) || labels[j] == labels[i];
+                    }
+                }
+                if (agrees && border == (labels[i] >= 0)) {
+                    agreementNum++;
+                }
+            }
+            double agreement = (double) agreementNum / segments.size();
+            assertEquals(agreement, approximate.getEstimatedLabelAgreement(), 0.05);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.ArrayTrajectory;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDistance.computeSegmentToSegmentDistance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * incremental trajectory cluster test
+ *
+ * @author yuzisheng
+ * @date 2021/11/26
+ */
+public class IncrementalTrajectoryClusterTest {
+    static int BATCH_NUM = 4;
+
+    @Test
+    public void batchesMatchFullRun() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            ArrayList<Trajectory> trajs = getTestData(dataset);
+            SegmentStore segments = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan full = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                full.cluster();
+                IncrementalTrajectoryCluster incremental = new IncrementalTrajectoryCluster(PARTITION_MIN_SEGMENT_LENGTH_IN_M,
+                        eps, DBSCAN_MIN_NUM, 0.0, 1, 1);
+                int batchSize = (trajs.size() + BATCH_NUM - 1) / BATCH_NUM;
+                for (int from = 0; from < trajs.size(); from += batchSize) {
+                    incremental.addTrajectories(trajs.subList(from, Math.min(from + batchSize, trajs.size())));
+                    incremental.getRepresentativeTrajectories();
+                }
+                assertEquals(full.getClusterNum(), incremental.getClusterNum());
+                assertSameCorePartition(segments, eps, full.getLabels(), incremental.getLabels());
+                assertEquals(new TrajectoryRepresentative(segments, incremental.getLabels(), incremental.getClusterNum(),
+                                0.0, 1, 1).compute().toString(),
+                        incremental.getRepresentativeTrajectories().toString());
+            }
+        }
+    }
+
+    @Test
+    public void equalLengthSegmentsEvaluatedFromTheOldSegment() throws Exception {
+        // segments of length 100 at distance 140 from the first one and 177.5 from the second one
+        Trajectory first = new ArrayTrajectory("a", new double[]{0.0, 100.0}, new double[]{0.0, 0.0});
+        Trajectory second = new ArrayTrajectory("b", new double[]{-50.0, 10.0}, new double[]{-20.0, 60.0});
+        // a copy next to the first segment makes it core before the second one is added
+        Trajectory copy = new ArrayTrajectory("c", new double[]{0.0, 100.0}, new double[]{1.0, 1.0});
+        for (List<Trajectory> firstBatch : Arrays.asList(Collections.singletonList(first), Arrays.asList(first, copy))) {
+            ArrayList<Trajectory> trajs = new ArrayList<>(firstBatch);
+            trajs.add(second);
+            SegmentStore segments = new TrajectoryPartition(trajs, 0.0).partitionToStore();
+            TrajectoryDBScan full = new TrajectoryDBScan(segments, 150.0, 2);
+            full.cluster();
+            assertEquals(1, full.getClusterNum());
+
+            IncrementalTrajectoryCluster incremental = new IncrementalTrajectoryCluster(0.0, 150.0, 2, 0.0, 1, 1);
+            incremental.addTrajectories(firstBatch);
+            incremental.addTrajectories(Collections.singletonList(second));
+            assertEquals(full.getClusterNum(), incremental.getClusterNum());
+            assertArrayEquals(full.getLabels(), incremental.getLabels());
+        }
+    }
+
+    /**
+     * core segments are grouped the same way up to cluster numbering and noise is the same
+     */
+    static void assertSameCorePartition(SegmentStore segments, double eps, int[] expected, int[] actual) {
+        assertEquals(expected.length, actual.length);
+        int[] rename = new int[expected.length];
+        Arrays.fill(rename, -1);
+        for (int i = 0; i < segments.size(); i++) {
+            assertEquals(expected[i] < 0, actual[i] < 0);
+            int neighborNum = 0;
+            for (int j = 0; j < segments.size(); j++) {
+                if (computeSegmentToSegmentDistance(segments, i, j) <= eps) neighborNum++;
+            }
+            if (neighborNum >= DBSCAN_MIN_NUM) {
+                if (rename[expected[i]] < 0) {
+                    rename[expected[i]] = actual[i];
+                }
+                assertEquals(rename[expected[i]], actual[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.OffHeapSegmentStore;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.IntBuffer;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class OffHeapTrajectoryDBScanTest {
+    @Test
+    public void offHeapMatchesHeap() throws Exception {
+        File file = File.createTempFile("segments", ".bin");
+        file.deleteOnExit();
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            try (OffHeapSegmentStore direct = new OffHeapSegmentStore(); OffHeapSegmentStore mapped = new OffHeapSegmentStore(file)) {
+                for (int i = 0; i < segments.size(); i++) {
+                    direct.add(segments.getX1(i), segments.getY1(i), segments.getX2(i), segments.getY2(i), segments.getTid(i));
+                    mapped.add(segments.getX1(i), segments.getY1(i), segments.getX2(i), segments.getY2(i), segments.getTid(i));
+                }
+                assertEquals(segments.getTrajNumber(), direct.getTrajNumber());
+                for (double eps : DBSCAN_EPS_IN_M) {
+                    TrajectoryDBScan heap = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                    heap.cluster();
+                    String expected = new TrajectoryRepresentative(segments, heap.getLabels(), heap.getClusterNum(),
+                            PARTITION_MIN_SEGMENT_LENGTH_IN_M, DBSCAN_MIN_NUM, DBSCAN_MIN_NUM).compute().toString();
+                    for (OffHeapSegmentStore store : new OffHeapSegmentStore[]{direct, mapped}) {
+                        TrajectoryDBScan offHeap = new TrajectoryDBScan(store, eps, DBSCAN_MIN_NUM);
+                        offHeap.setOffHeap(true);
+                        IntBuffer labels = offHeap.clusterToBuffer();
+                        assertTrue(labels.isDirect());
+                        assertArrayEquals(heap.getLabels(), offHeap.getLabels());
+                        assertEquals(heap.getClusterNum(), offHeap.getClusterNum());
+                        assertEquals(heap.getCorePointNumber(), offHeap.getCorePointNumber());
+                        assertEquals(expected, new TrajectoryRepresentative(store, labels, offHeap.getClusterNum(),
+                                PARTITION_MIN_SEGMENT_LENGTH_IN_M, DBSCAN_MIN_NUM, DBSCAN_MIN_NUM).compute().toString());
+                    }
+                }
+            }
+        }
+    }
+}
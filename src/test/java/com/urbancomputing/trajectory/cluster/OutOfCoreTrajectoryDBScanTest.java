@@ -0,0 +1,59 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class OutOfCoreTrajectoryDBScanTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void outOfCoreMatchesInMemory() throws Exception {
+        File spillDirectory = folder.newFolder();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan inMemory = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                inMemory.cluster();
+                // the out-of-core run evaluates every neighborhood exactly once
+                TrajectoryDBScan allNeighborhoods = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                long neighborNum = 0;
+                for (int[] neighbors : allNeighborhoods.computeNeighborhoods()) {
+                    neighborNum += neighbors.length;
+                }
+                // a tiny budget spills neighborhoods and maps the state, a large one keeps everything in memory
+                for (long memoryBudget : new long[]{1L << 12, 1L << 30}) {
+                    // a parallel run spills the neighborhoods evaluated on the pool as well
+                    for (ForkJoinPool outOfCorePool : new ForkJoinPool[]{null, pool}) {
+                        TrajectoryDBScan outOfCore = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                        outOfCore.setPool(outOfCorePool);
+                        outOfCore.setOutOfCore(spillDirectory, memoryBudget);
+                        outOfCore.cluster();
+                        assertArrayEquals(inMemory.getLabels(), outOfCore.getLabels());
+                        assertEquals(inMemory.getClusterNum(), outOfCore.getClusterNum());
+                        assertEquals(inMemory.getCorePointNumber(), outOfCore.getCorePointNumber());
+                        assertEquals(allNeighborhoods.distanceEvaluationNum, outOfCore.getDistanceEvaluationNumber());
+                        assertEquals(neighborNum, outOfCore.spilledNeighborNum);
+                        assertEquals(0, Objects.requireNonNull(spillDirectory.list()).length);
+                    }
+                }
+            }
+        }
+        pool.shutdown();
+    }
+}
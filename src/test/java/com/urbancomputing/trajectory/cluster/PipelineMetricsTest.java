@@ -0,0 +1,46 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * pipeline metrics test
+ *
+ * @author yuzisheng
+ * @date 2021/11/29
+ */
+public class PipelineMetricsTest {
+    @Test
+    public void metricsMatchStageOutputs() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        double eps = DBSCAN_EPS_IN_M[1];
+        TrajectoryCluster trajectoryCluster = new TrajectoryCluster(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M, eps,
+                DBSCAN_MIN_NUM, 30.0, 10, 10);
+        ArrayList<PipelineListener.Stage> stages = new ArrayList<>();
+        trajectoryCluster.setListener((stage, metrics) -> stages.add(stage));
+        ArrayList<Trajectory> representativeTrajs = trajectoryCluster.doCluster();
+        PipelineMetrics metrics = trajectoryCluster.getMetrics();
+
+        assertEquals(Arrays.asList(PipelineListener.Stage.values()), stages);
+        SegmentStore segments = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+        TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+        trajectoryDBScan.cluster();
+        assertEquals(trajs.size(), metrics.getTrajectoryNumber());
+        assertEquals(segments.size(), metrics.getSegmentNumber());
+        assertTrue(metrics.getCharacteristicPointNumber() >= segments.size() + trajs.size());
+        assertEquals(trajectoryDBScan.getClusterNum(), metrics.getClusterNumber());
+        assertEquals(trajectoryDBScan.getCorePointNumber(), metrics.getCorePointNumber());
+        assertEquals(Arrays.stream(trajectoryDBScan.getLabels()).filter(label -> label < 0).count(), metrics.getNoiseNumber());
+        assertEquals(trajectoryDBScan.getDistanceEvaluationNumber(), metrics.getDistanceEvaluationNumber());
+        assertTrue(metrics.getPeakFrontierSize() > 0);
+        assertEquals(representativeTrajs.size(), metrics.getRepresentativeNumber());
+    }
+}
@@ -0,0 +1,61 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.junit.Test;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * tiled segment cluster test
+ *
+ * @author yuzisheng
+ * @date 2021/11/27
+ */
+public class TiledTrajectoryDBScanTest {
+    @Test
+    public void tilesMatchSingleRun() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan single = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                single.cluster();
+                TiledTrajectoryDBScan tiled = new TiledTrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM, 4, 3, TileExecutor.IN_PROCESS);
+                tiled.cluster();
+                assertEquals(single.getClusterNum(), tiled.getClusterNum());
+                assertArrayEquals(single.getLabels(), tiled.getLabels());
+            }
+        }
+    }
+
+    @Test
+    public void workerProcessesMatchSingleRun() throws Exception {
+        SegmentStore segments = new TrajectoryPartition(getTestData("/elk_1993.txt"), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+        double eps = DBSCAN_EPS_IN_M[1];
+        TrajectoryDBScan single = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+        single.cluster();
+        TiledTrajectoryDBScan tiled = new TiledTrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM, 2, 2, new LocalProcessTileExecutor(2));
+        tiled.cluster();
+        assertEquals(single.getClusterNum(), tiled.getClusterNum());
+        assertArrayEquals(single.getLabels(), tiled.getLabels());
+    }
+
+    @Test
+    public void haloBorderBetweenLocalClustersJoinsBoth() throws Exception {
+        // a halo segment of the lower tile is core in the single run but a border between two local clusters there
+        double[][] starts = {{-12, -6}, {12, -6}, {-12, -24}, {-11, -24}, {12, -24}, {11, -24}, {0, 2}, {0, 21},
+                {-24, 2}, {-24, 20}, {-25, 20}};
+        SegmentStore segments = new SegmentStore(starts.length);
+        for (double[] start : starts) {
+            segments.add(start[0], start[1], start[0] + 200, start[1], "");
+        }
+        TrajectoryDBScan single = new TrajectoryDBScan(segments, 20.0, 4);
+        single.cluster();
+        assertEquals(1, single.getClusterNum());
+        TiledTrajectoryDBScan tiled = new TiledTrajectoryDBScan(segments, 20.0, 4, 1, 2, TileExecutor.IN_PROCESS);
+        tiled.cluster();
+        assertEquals(single.getClusterNum(), tiled.getClusterNum());
+        assertArrayEquals(single.getLabels(), tiled.getLabels());
+    }
+}
@@ -0,0 +1,132 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.io.StageCheckpoint;
+import com.urbancomputing.trajectory.model.Point;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Objects;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class TrajectoryClusterCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void checkpointsSkipStages() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        File directory = folder.newFolder();
+        double eps = DBSCAN_EPS_IN_M[1];
+        String expected = newCluster(trajs, eps, 30.0, null).doCluster().toString();
+
+        TrajectoryCluster first = newCluster(trajs, eps, 30.0, directory);
+        assertEquals(expected, first.doCluster().toString());
+        assertFalse(first.getMetrics().isPartitionLoaded());
+        assertFalse(first.getMetrics().isDbscanLoaded());
+
+        // only the representative parameters change, both stages are loaded
+        TrajectoryCluster second = newCluster(trajs, eps, 60.0, directory);
+        assertEquals(newCluster(trajs, eps, 60.0, null).doCluster().toString(), second.doCluster().toString());
+        assertTrue(second.getMetrics().isPartitionLoaded());
+        assertTrue(second.getMetrics().isDbscanLoaded());
+        assertEquals(first.getMetrics().getCharacteristicPointNumber(), second.getMetrics().getCharacteristicPointNumber());
+        assertEquals(first.getMetrics().getCorePointNumber(), second.getMetrics().getCorePointNumber());
+        assertEquals(first.getMetrics().getNoiseNumber(), second.getMetrics().getNoiseNumber());
+
+        // another eps reuses the segments only
+        TrajectoryCluster third = newCluster(trajs, DBSCAN_EPS_IN_M[0], 30.0, directory);
+        assertEquals(newCluster(trajs, DBSCAN_EPS_IN_M[0], 30.0, null).doCluster().toString(), third.doCluster().toString());
+        assertTrue(third.getMetrics().isPartitionLoaded());
+        assertFalse(third.getMetrics().isDbscanLoaded());
+    }
+
+    @Test
+    public void tilingKeysDBScan() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        File directory = folder.newFolder();
+        double eps = DBSCAN_EPS_IN_M[1];
+        TrajectoryCluster coarse = newCluster(trajs, eps, 30.0, directory);
+        coarse.setTiling(2, 2, TileExecutor.IN_PROCESS);
+        coarse.doCluster();
+        assertFalse(coarse.getMetrics().isDbscanLoaded());
+
+        // tiled runs over other tiles may label border segments differently
+        TrajectoryCluster fine = newCluster(trajs, eps, 30.0, directory);
+        fine.setTiling(4, 4, TileExecutor.IN_PROCESS);
+        fine.doCluster();
+        assertTrue(fine.getMetrics().isPartitionLoaded());
+        assertFalse(fine.getMetrics().isDbscanLoaded());
+
+        TrajectoryCluster again = newCluster(trajs, eps, 30.0, directory);
+        again.setTiling(2, 2, TileExecutor.IN_PROCESS);
+        again.doCluster();
+        assertTrue(again.getMetrics().isDbscanLoaded());
+    }
+
+    @Test
+    public void unreadableCheckpointsAreRecomputed() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        File directory = folder.newFolder();
+        double eps = DBSCAN_EPS_IN_M[1];
+        String expected = newCluster(trajs, eps, 30.0, directory).doCluster().toString();
+        File[] files = Objects.requireNonNull(directory.listFiles());
+        assertEquals(2, files.length);
+        // another format version and a file cut in the middle
+        for (boolean truncate : new boolean[]{false, true}) {
+            for (File file : files) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    if (truncate) {
+                        raf.setLength(raf.length() / 2);
+                    } else {
+                        raf.seek(Integer.BYTES);
+                        raf.write(new byte[]{99, 0, 0, 0});
+                    }
+                }
+            }
+            TrajectoryCluster recomputed = newCluster(trajs, eps, 30.0, directory);
+            assertEquals(expected, recomputed.doCluster().toString());
+            assertFalse(recomputed.getMetrics().isPartitionLoaded());
+            assertFalse(recomputed.getMetrics().isDbscanLoaded());
+
+            // the files are overwritten by the recomputed stages
+            TrajectoryCluster loaded = newCluster(trajs, eps, 30.0, directory);
+            assertEquals(expected, loaded.doCluster().toString());
+            assertTrue(loaded.getMetrics().isPartitionLoaded());
+            assertTrue(loaded.getMetrics().isDbscanLoaded());
+        }
+    }
+
+    @Test
+    public void fingerprintFollowsCoordinates() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        String fingerprint = StageCheckpoint.fingerprint(trajs);
+        assertEquals(fingerprint, StageCheckpoint.fingerprint(getTestData("/elk_1993.txt")));
+        Trajectory last = trajs.get(trajs.size() - 1);
+        ArrayList<Point> points = new ArrayList<>(last.getPoints());
+        points.set(0, new Point(points.get(0).getLng() + 1e-9, points.get(0).getLat()));
+        trajs.set(trajs.size() - 1, new Trajectory(last.getTid(), points));
+        assertNotEquals(fingerprint, StageCheckpoint.fingerprint(trajs));
+    }
+
+    private static TrajectoryCluster newCluster(ArrayList<Trajectory> trajs, double eps, double repMinSmoothingLength,
+                                                File checkpointDirectory) {
+        TrajectoryCluster trajectoryCluster = new TrajectoryCluster(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M, eps,
+                DBSCAN_MIN_NUM, repMinSmoothingLength, 10, 10);
+        trajectoryCluster.setCheckpointDirectory(checkpointDirectory);
+        return trajectoryCluster;
+    }
+}
@@ -0,0 +1,42 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.getTestData;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * trajectory cluster sweep test
+ *
+ * @author yuzisheng
+ * @date 2021/11/30
+ */
+public class TrajectoryClusterSweepTest {
+    @Test
+    public void sweepMatchesSeparateRuns() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        TrajectoryClusterSweep sweep = new TrajectoryClusterSweep(trajs, new double[]{50.0}, new double[]{15.0, 25.0},
+                new int[]{5, 8}, new double[]{30.0}, new int[]{5, 10}, new int[]{10});
+        ArrayList<TrajectoryClusterSweep.Result> results = sweep.sweep();
+        assertEquals(8, results.size());
+        for (TrajectoryClusterSweep.Result result : results) {
+            TrajectoryCluster trajectoryCluster = new TrajectoryCluster(trajs, result.getPartitionMinSegmentLength(),
+                    result.getDbscanEps(), result.getDbscanMinNum(), result.getRepMinSmoothingLength(),
+                    result.getRepMinTrajNumForCluster(), result.getRepMinSegmentNumForSweep());
+            assertEquals(trajectoryCluster.doCluster().toString(), result.getRepresentativeTrajs().toString());
+            assertEquals(trajectoryCluster.getMetrics().getClusterNumber(), result.getClusterNum());
+        }
+        assertEquals(1, sweep.getPartitionRunNumber());
+        assertEquals(2, sweep.getNeighborhoodRunNumber());
+        assertEquals(4, sweep.getDBScanRunNumber());
+
+        // a second sweep reuses every stage output
+        sweep.sweep();
+        assertEquals(1, sweep.getPartitionRunNumber());
+        assertEquals(2, sweep.getNeighborhoodRunNumber());
+        assertEquals(4, sweep.getDBScanRunNumber());
+    }
+}
@@ -1,15 +1,20 @@
 package com.urbancomputing.trajectory.cluster;
 
-import com.urbancomputing.trajectory.model.Point;
+import com.urbancomputing.trajectory.io.TextTrajectoryParser;
 import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
-import java.io.*;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * trajectory cluster test
@@ -30,6 +35,9 @@ public class TrajectoryClusterTest {
     static int REP_MIN_TRAJ_NUM_FOR_CLUSTER = 10;
     static int REP_MIN_SEGMENT_NUM_FOR_SWEEP = 10;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void doCluster() throws Exception {
         // initialize test data
@@ -43,31 +51,28 @@ public class TrajectoryClusterTest {
         assertEquals(representativeTrajs.size(), 6);
 
         // trajectory visualization
-        TrajectoryVisualizeFrame frame = new TrajectoryVisualizeFrame(trajs, null, representativeTrajs);
-        frame.draw();
-
-        // sleep for a while to avoid exit automatic in java unit test
-        Thread.sleep(60 * 1000);
+        TrajectoryRenderer renderer = new TrajectoryRenderer(trajs, null, representativeTrajs);
+        TrajectoryRenderer.Viewport viewport = renderer.fitViewport(1200, 900);
+        assertEquals(6, renderer.renderTiles(viewport, 512, folder.getRoot()));
+        boolean red = false;
+        for (int col = 0; col < 3; col++) {
+            for (int row = 0; row < 2; row++) {
+                BufferedImage tile = ImageIO.read(new File(folder.getRoot(), col + "_" + row + ".png"));
+                for (int y = 0; y < tile.getHeight(); y++) {
+                    for (int x = 0; x < tile.getWidth(); x++) {
+                        red |= (tile.getRGB(x, y) & 0xFFFFFF) == 0xFF0000;
+                    }
+                }
+            }
+        }
+        assertTrue(red);
     }
 
-    private ArrayList<Trajectory> getTestData() throws IOException {
+    private ArrayList<Trajectory> getTestData() throws Exception {
         String filePath = Objects.requireNonNull(TrajectoryClusterTest.class.getResource("/elk_1993.txt")).getPath();
-        FileInputStream in = new FileInputStream(filePath);
-        InputStreamReader reader = new InputStreamReader(in);
-        BufferedReader bufferedReader = new BufferedReader(reader);
         ArrayList<Trajectory> trajs = new ArrayList<>();
-        String line;
-        while ((line = bufferedReader.readLine()) != null) {
-            String[] items = line.split(" ");
-            String oid = items[0];
-            int pointNumber = Integer.parseInt(items[1]);
-            ArrayList<Point> points = new ArrayList<>(pointNumber);
-            for (int i = 2; i < items.length; i += 2) {
-                Point p = new Point(Double.parseDouble(items[i]), Double.parseDouble(items[i + 1]));
-                points.add(p);
-            }
-            Trajectory traj = new Trajectory(oid, points);
-            trajs.add(traj);
+        try (TextTrajectoryParser parser = TextTrajectoryParser.open(new File(filePath))) {
+            parser.forEach(trajs::add);
         }
         return trajs;
     }
@@ -0,0 +1,58 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.ArrayTrajectory;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class TrajectoryCompressionTest {
+    @Test
+    public void collapseStay() {
+        Trajectory traj = new ArrayTrajectory("stay",
+                new double[]{0.0, 100.0, 200.0, 201.0, 199.0, 200.0, 202.0, 300.0},
+                new double[]{0.0, 0.0, 0.0, 1.0, -1.0, 2.0, -2.0, 0.0});
+        TrajectoryCompression trajectoryCompression = new TrajectoryCompression(new ArrayList<>(Collections.singletonList(traj)), 5.0);
+        Trajectory compressed = trajectoryCompression.compress().get(0);
+        assertEquals(4, trajectoryCompression.getRemovedPointNumber());
+        assertEquals("LINESTRING (0.0 0.0, 100.0 0.0, 200.4 0.0, 300.0 0.0)", compressed.toString());
+        assertEquals("stay", compressed.getTid());
+
+        // a trajectory within the radius keeps its end points
+        assertEquals("LINESTRING (200.0 0.0, 202.0 -2.0)",
+                TrajectoryCompression.compress(new ArrayTrajectory("jitter", new double[]{200.0, 201.0, 202.0},
+                        new double[]{0.0, 1.0, -2.0}), 5.0).toString());
+    }
+
+    @Test
+    public void compressBeforePartition() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        long pointNum = 0;
+        for (Trajectory traj : trajs) pointNum += traj.getPointNumber();
+        TrajectoryCompression trajectoryCompression = new TrajectoryCompression(trajs, DBSCAN_EPS_IN_M[0]);
+        ArrayList<Trajectory> compressedTrajs = trajectoryCompression.compress();
+        long compressedPointNum = 0;
+        for (Trajectory traj : compressedTrajs) compressedPointNum += traj.getPointNumber();
+        assertEquals(pointNum - compressedPointNum, trajectoryCompression.getRemovedPointNumber());
+        assertTrue(compressedPointNum * 2 < pointNum);
+
+        trajectoryCompression.setPool(new ForkJoinPool(4));
+        assertEquals(compressedTrajs.toString(), trajectoryCompression.compress().toString());
+
+        TrajectoryCluster trajectoryCluster = new TrajectoryCluster(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M,
+                DBSCAN_EPS_IN_M[1], DBSCAN_MIN_NUM, PARTITION_MIN_SEGMENT_LENGTH_IN_M, DBSCAN_MIN_NUM, DBSCAN_MIN_NUM);
+        trajectoryCluster.setCompressionRadius(DBSCAN_EPS_IN_M[0]);
+        trajectoryCluster.doCluster();
+        assertEquals(pointNum - compressedPointNum, trajectoryCluster.getMetrics().getRemovedPointNumber());
+    }
+}
@@ -0,0 +1,115 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.index.BruteForceSegmentIndex;
+import com.urbancomputing.trajectory.io.TextTrajectoryParser;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * segment cluster test
+ *
+ * @author yuzisheng
+ * @date 2021/11/20
+ */
+public class TrajectoryDBScanTest {
+    static double PARTITION_MIN_SEGMENT_LENGTH_IN_M = 50.0;
+    static double[] DBSCAN_EPS_IN_M = {15.0, 25.0, 40.0};
+    static int DBSCAN_MIN_NUM = 5;
+
+    @Test
+    public void indexMatchesFullScan() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan reference = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM, new BruteForceSegmentIndex(segments));
+                TrajectoryDBScan indexed = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                assertEquals(reference.cluster(), indexed.cluster());
+                assertEquals(reference.getClusterNum(), indexed.getClusterNum());
+            }
+        }
+    }
+
+    @Test
+    public void boundedDistanceMatchesFullDistance() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                for (int i = 0; i < segments.size(); i += 7) {
+                    for (int j = 0; j < segments.size(); j++) {
+                        double distance = TrajectoryDistance.computeSegmentToSegmentDistance(segments, i, j);
+                        double bounded = TrajectoryDistance.computeBoundedSegmentToSegmentDistance(segments, i, j, eps);
+                        if (distance <= eps) {
+                            assertEquals(Double.doubleToLongBits(distance), Double.doubleToLongBits(bounded));
+                        } else {
+                            assertTrue(bounded > eps);
+                        }
+                    }
+                }
+                TrajectoryDBScan full = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                TrajectoryDBScan bounded = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                bounded.setBoundedDistance(true);
+                assertEquals(full.cluster(), bounded.cluster());
+                assertEquals(full.getClusterNum(), bounded.getClusterNum());
+            }
+        }
+    }
+
+    @Test
+    public void batchDistanceMatchesPairDistance() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            int n = segments.size();
+            double[] x1s = new double[n], y1s = new double[n], x2s = new double[n], y2s = new double[n], lengths = new double[n];
+            for (int j = 0; j < n; j++) {
+                x1s[j] = segments.getX1(j);
+                y1s[j] = segments.getY1(j);
+                x2s[j] = segments.getX2(j);
+                y2s[j] = segments.getY2(j);
+                lengths[j] = segments.getLength(j);
+            }
+            double[] distances = new double[n];
+            for (int i = 0; i < n; i += 7) {
+                TrajectoryDistance.computeSegmentToSegmentDistances(x1s[i], y1s[i], x2s[i], y2s[i], lengths[i],
+                        x1s, y1s, x2s, y2s, lengths, 0, n, distances);
+                for (int j = 0; j < n; j++) {
+                    assertEquals(Double.doubleToLongBits(TrajectoryDistance.computeSegmentToSegmentDistance(segments, i, j)),
+                            Double.doubleToLongBits(distances[j]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan sequential = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                TrajectoryDBScan parallel = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                parallel.setPool(pool);
+                assertEquals(sequential.cluster(), parallel.cluster());
+                assertEquals(sequential.getClusterNum(), parallel.getClusterNum());
+            }
+        }
+        pool.shutdown();
+    }
+
+    static ArrayList<Trajectory> getTestData(String resource) throws Exception {
+        String filePath = Objects.requireNonNull(TrajectoryDBScanTest.class.getResource(resource)).getPath();
+        ArrayList<Trajectory> trajs = new ArrayList<>();
+        try (TextTrajectoryParser parser = TextTrajectoryParser.open(new File(filePath))) {
+            parser.forEach(trajs::add);
+        }
+        return trajs;
+    }
+}
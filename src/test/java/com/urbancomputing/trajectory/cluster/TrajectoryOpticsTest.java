@@ -0,0 +1,37 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.junit.Test;
+
+import static com.urbancomputing.trajectory.cluster.IncrementalTrajectoryClusterTest.assertSameCorePartition;
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * optics extraction test
+ *
+ * @author yuzisheng
+ * @date 2021/12/1
+ */
+public class TrajectoryOpticsTest {
+    @Test
+    public void extractionsMatchDBScan() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            TrajectoryOptics optics = new TrajectoryOptics(segments, DBSCAN_EPS_IN_M[DBSCAN_EPS_IN_M.length - 1], DBSCAN_MIN_NUM);
+            optics.computeOrdering();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan dbscan = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                dbscan.cluster();
+                int[] labels = optics.extractLabels(eps);
+                assertEquals(dbscan.getClusterNum(), optics.getClusterNum());
+                assertSameCorePartition(segments, eps, dbscan.getLabels(), labels);
+                for (int i = 0; i < segments.size(); i++) {
+                    if (dbscan.isCore(i)) {
+                        assertEquals(dbscan.getLabels()[i], labels[i]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import org.junit.Test;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * parameter estimator test
+ *
+ * @author yuzisheng
+ * @date 2021/12/2
+ */
+public class TrajectoryParameterEstimatorTest {
+    @Test
+    public void sampleBoundsFullEstimate() throws Exception {
+        SegmentStore segments = new TrajectoryPartition(getTestData("/elk_1993.txt"), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+        double[] epsCandidates = new double[20];
+        for (int c = 0; c < epsCandidates.length; c++) {
+            epsCandidates[c] = 5.0 * (c + 1);
+        }
+        TrajectoryParameterEstimator full = new TrajectoryParameterEstimator(segments, epsCandidates);
+        full.setSampleSize(segments.size());
+        TrajectoryParameterEstimator.Estimate fullEstimate = full.estimate();
+
+        TrajectoryParameterEstimator sampled = new TrajectoryParameterEstimator(segments, epsCandidates);
+        sampled.setSampleSize(segments.size() / 10);
+        TrajectoryParameterEstimator.Estimate sampledEstimate = sampled.estimate();
+
+        assertTrue(sampledEstimate.getDistanceEvaluationNumber() < fullEstimate.getDistanceEvaluationNumber() / 5);
+        assertTrue(sampledEstimate.getEpsLowerBound() <= fullEstimate.getEps());
+        assertTrue(fullEstimate.getEps() <= sampledEstimate.getEpsUpperBound());
+        assertTrue(sampledEstimate.getMinNumLowerBound() <= fullEstimate.getMinNum());
+        assertTrue(fullEstimate.getMinNum() <= sampledEstimate.getMinNumUpperBound());
+    }
+}
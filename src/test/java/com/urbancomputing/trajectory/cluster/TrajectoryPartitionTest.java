@@ -0,0 +1,172 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.OffHeapSegmentStore;
+import com.urbancomputing.trajectory.model.Point;
+import com.urbancomputing.trajectory.model.Segment;
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.getTestData;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * trajectory partition test
+ *
+ * @author yuzisheng
+ * @date 2021/11/24
+ */
+public class TrajectoryPartitionTest {
+    static double PARTITION_MIN_SEGMENT_LENGTH_IN_M = 50.0;
+
+    @Test
+    public void parallelMatchesSequential() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            ArrayList<Trajectory> trajs = getTestData(dataset);
+            ArrayList<Segment> expected = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partition();
+
+            TrajectoryPartition parallel = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M);
+            parallel.setPool(pool);
+            assertSameSegments(expected, parallel.partitionToStore());
+            assertSameSegments(expected, SegmentStore.of(parallel.partition()));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void streamingMatchesBatch() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        ArrayList<Segment> expected = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partition();
+        SegmentStore streamed = new SegmentStore();
+        TrajectoryPartition.partition(trajs.iterator(), PARTITION_MIN_SEGMENT_LENGTH_IN_M, streamed::add);
+        assertSameSegments(expected, streamed);
+    }
+
+    @Test
+    public void partitionIntoOffHeapStore() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        ArrayList<Segment> expected = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partition();
+        File file = File.createTempFile("segments", ".bin");
+        file.deleteOnExit();
+        try (OffHeapSegmentStore direct = new OffHeapSegmentStore(); OffHeapSegmentStore mapped = new OffHeapSegmentStore(file)) {
+            new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partition(direct::add);
+            TrajectoryPartition.partition(trajs.iterator(), PARTITION_MIN_SEGMENT_LENGTH_IN_M, mapped::add);
+            for (OffHeapSegmentStore store : new OffHeapSegmentStore[]{direct, mapped}) {
+                assertEquals(expected.size(), store.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).toString(), store.getSegment(i).toString());
+                    assertEquals(expected.get(i).getTid(), store.getTid(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesOriginalMDLCost() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            ArrayList<Trajectory> trajs = getTestData(dataset);
+            for (double minSegmentLength : new double[]{0.0, PARTITION_MIN_SEGMENT_LENGTH_IN_M}) {
+                ArrayList<Segment> expected = new ArrayList<>();
+                long characteristicPointNum = 0;
+                for (Trajectory traj : trajs) {
+                    ArrayList<Point> characteristicPoints = computeOriginalCharacteristicPoints(traj);
+                    characteristicPointNum += characteristicPoints.size();
+                    for (int i = 0; i < characteristicPoints.size() - 1; i++) {
+                        Segment s = new Segment(characteristicPoints.get(i), characteristicPoints.get(i + 1), traj.getTid());
+                        if (s.length() >= minSegmentLength) {
+                            expected.add(s);
+                        }
+                    }
+                }
+                TrajectoryPartition trajectoryPartition = new TrajectoryPartition(trajs, minSegmentLength);
+                assertSameSegments(expected, trajectoryPartition.partitionToStore());
+                assertEquals(characteristicPointNum, trajectoryPartition.getCharacteristicPointNumber());
+            }
+        }
+    }
+
+    /**
+     * characteristic points with the cost functions of the first implementation, every cost is recomputed from the
+     * points for each candidate
+     */
+    private static ArrayList<Point> computeOriginalCharacteristicPoints(Trajectory traj) {
+        int pointNumber = traj.getPointNumber();
+        ArrayList<Point> characteristicPoints = new ArrayList<>();
+        characteristicPoints.add(traj.getPoint(0));
+        int startIndex = 0, length = 1, currIndex;
+        do {
+            currIndex = startIndex + length;
+            int parMDLCost = computeLogCost(computeDistance(traj.getPoint(startIndex), traj.getPoint(currIndex)));
+            int noParMDLCost = 0;
+            for (int k = startIndex; k < currIndex; k++) {
+                Point start = traj.getPoint(startIndex), end = traj.getPoint(currIndex);
+                Point from = traj.getPoint(k), to = traj.getPoint(k + 1);
+                parMDLCost += computeLogCost(computePerpendicularDistance(start, end, from, to))
+                        + computeLogCost(computeAngleDistance(start, end, from, to));
+                noParMDLCost += computeLogCost(computeDistance(from, to));
+            }
+            if (parMDLCost > noParMDLCost) {
+                characteristicPoints.add(traj.getPoint(currIndex - 1));
+                startIndex = currIndex - 1;
+                length = 1;
+            } else {
+                length += 1;
+            }
+        } while (startIndex + length < pointNumber);
+        characteristicPoints.add(traj.getPoint(pointNumber - 1));
+        return characteristicPoints;
+    }
+
+    private static int computeLogCost(double x) {
+        if (x < 1.0) x = 1.0;
+        return (int) Math.ceil(Math.log(x) / Math.log(2));
+    }
+
+    private static double computeDistance(Point p1, Point p2) {
+        return Math.sqrt(Math.pow(p1.getLng() - p2.getLng(), 2) + Math.pow(p1.getLat() - p2.getLat(), 2));
+    }
+
+    private static double computePerpendicularDistance(Point s1, Point e1, Point s2, Point e2) {
+        if (computeDistance(s1, e1) < computeDistance(s2, e2)) {
+            return computePerpendicularDistance(s2, e2, s1, e1);
+        }
+        double distance1 = computePointToSegmentDistance(s2, s1, e1);
+        double distance2 = computePointToSegmentDistance(e2, s1, e1);
+        if (distance1 == 0.0 && distance2 == 0.0) {
+            return 0.0;
+        }
+        return (Math.pow(distance1, 2) + Math.pow(distance2, 2)) / (distance1 + distance2);
+    }
+
+    private static double computeAngleDistance(Point s1, Point e1, Point s2, Point e2) {
+        double x1 = e1.getLng() - s1.getLng(), y1 = e1.getLat() - s1.getLat();
+        double x2 = e2.getLng() - s2.getLng(), y2 = e2.getLat() - s2.getLat();
+        double length1 = Math.sqrt(Math.pow(x1, 2) + Math.pow(y1, 2));
+        double length2 = Math.sqrt(Math.pow(x2, 2) + Math.pow(y2, 2));
+        if (length1 == 0.0 || length2 == 0.0) return 0.0;
+        double cosTheta = (x1 * x2 + y1 * y2) / (length1 * length2);
+        if (cosTheta > 1.0) cosTheta = 1.0;
+        if (cosTheta < -1.0) cosTheta = -1.0;
+        return length2 * Math.sqrt(1 - Math.pow(cosTheta, 2));
+    }
+
+    private static double computePointToSegmentDistance(Point p, Point start, Point end) {
+        double x1 = p.getLng() - start.getLng(), y1 = p.getLat() - start.getLat();
+        double x2 = end.getLng() - start.getLng(), y2 = end.getLat() - start.getLat();
+        double coefficient = (x1 * x2 + y1 * y2) / (x2 * x2 + y2 * y2);
+        return computeDistance(p, new Point(start.getLng() + coefficient * x2, start.getLat() + coefficient * y2));
+    }
+
+    static void assertSameSegments(ArrayList<Segment> expected, SegmentStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.getSegment(i).toString());
+            assertEquals(expected.get(i).getTid(), actual.getTid(i));
+        }
+    }
+}
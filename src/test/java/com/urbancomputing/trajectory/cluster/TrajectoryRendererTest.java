@@ -0,0 +1,53 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class TrajectoryRendererTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void tilesMatchSingleImage() throws Exception {
+        ArrayList<Trajectory> trajs = getTestData("/elk_1993.txt");
+        SegmentStore segments = new TrajectoryPartition(trajs, PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+        TrajectoryRenderer renderer = new TrajectoryRenderer(trajs, segments, null);
+        TrajectoryRenderer.Viewport viewport = renderer.fitViewport(700, 500);
+        BufferedImage image = renderer.render(viewport);
+
+        renderer.setPool(new ForkJoinPool(4));
+        int tileSize = 128;
+        assertEquals(24, renderer.renderTiles(viewport, tileSize, folder.getRoot()));
+        int background = image.getRGB(0, 0), drawn = 0;
+        for (int col = 0; col < 6; col++) {
+            for (int row = 0; row < 4; row++) {
+                BufferedImage tile = ImageIO.read(new File(folder.getRoot(), col + "_" + row + ".png"));
+                for (int y = 0; y < tile.getHeight(); y++) {
+                    for (int x = 0; x < tile.getWidth(); x++) {
+                        int rgb = image.getRGB(col * tileSize + x, row * tileSize + y);
+                        assertEquals(rgb & 0xFFFFFF, tile.getRGB(x, y) & 0xFFFFFF);
+                        if (rgb != background) drawn++;
+                    }
+                }
+            }
+        }
+        assertNotEquals(0, drawn);
+    }
+}
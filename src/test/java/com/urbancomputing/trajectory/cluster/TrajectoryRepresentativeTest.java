@@ -0,0 +1,164 @@
+package com.urbancomputing.trajectory.cluster;
+
+import com.urbancomputing.trajectory.model.SegmentStore;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.urbancomputing.trajectory.cluster.TrajectoryDBScanTest.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author yuzisheng
+ * @date 2021/12/5
+ */
+public class TrajectoryRepresentativeTest {
+    /**
+     * the sweep sums the active segments in another order than a scan over all segments
+     */
+    static final double TOLERANCE = 1e-6;
+
+    @Test
+    public void sweepMatchesBruteForce() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            for (double minSegmentLength : new double[]{0.0, PARTITION_MIN_SEGMENT_LENGTH_IN_M}) {
+                SegmentStore segments = new TrajectoryPartition(getTestData(dataset), minSegmentLength).partitionToStore();
+                // larger eps merges the unfiltered segments into one cluster too large for the quadratic reference
+                TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, DBSCAN_EPS_IN_M[0], 3);
+                trajectoryDBScan.cluster();
+                int[] labels = trajectoryDBScan.getLabels();
+                int clusterNum = trajectoryDBScan.getClusterNum();
+                ArrayList<BruteForceSweep> sweeps = sweepBruteForce(segments, labels, clusterNum, 3);
+                for (double minSmoothingLength : new double[]{0.0, PARTITION_MIN_SEGMENT_LENGTH_IN_M}) {
+                    ArrayList<Trajectory> actual = new TrajectoryRepresentative(segments, labels, clusterNum,
+                            minSmoothingLength, 3, 3).compute();
+                    ArrayList<double[][]> expected = new ArrayList<>();
+                    for (BruteForceSweep sweep : sweeps) {
+                        double[][] points = sweep.getRepresentativePoints(minSmoothingLength, 3);
+                        if (points.length >= 2) expected.add(points);
+                    }
+                    assertEquals(expected.size(), actual.size());
+                    for (int t = 0; t < expected.size(); t++) {
+                        assertEquals(expected.get(t).length, actual.get(t).getPointNumber());
+                        for (int p = 0; p < expected.get(t).length; p++) {
+                            assertEquals(expected.get(t)[p][0], actual.get(t).getX(p), TOLERANCE);
+                            assertEquals(expected.get(t)[p][1], actual.get(t).getY(p), TOLERANCE);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            SegmentStore segments = new TrajectoryPartition(getTestData(dataset), PARTITION_MIN_SEGMENT_LENGTH_IN_M).partitionToStore();
+            for (double eps : DBSCAN_EPS_IN_M) {
+                TrajectoryDBScan trajectoryDBScan = new TrajectoryDBScan(segments, eps, DBSCAN_MIN_NUM);
+                trajectoryDBScan.cluster();
+                TrajectoryRepresentative sequential = new TrajectoryRepresentative(segments, trajectoryDBScan.getLabels(),
+                        trajectoryDBScan.getClusterNum(), PARTITION_MIN_SEGMENT_LENGTH_IN_M, DBSCAN_MIN_NUM, DBSCAN_MIN_NUM);
+                TrajectoryRepresentative parallel = new TrajectoryRepresentative(segments, trajectoryDBScan.getLabels(),
+                        trajectoryDBScan.getClusterNum(), PARTITION_MIN_SEGMENT_LENGTH_IN_M, DBSCAN_MIN_NUM, DBSCAN_MIN_NUM);
+                parallel.setPool(pool);
+                String expected = sequential.compute().toString();
+                assertNotEquals("[]", expected);
+                assertEquals(expected, parallel.compute().toString());
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * sweep every cluster of enough trajectories as the first implementation did, the segments containing each sweep
+     * position are found by a scan over all segments of the cluster
+     */
+    private static ArrayList<BruteForceSweep> sweepBruteForce(SegmentStore segments, int[] labels, int clusterNum,
+                                                              int minTrajNumForCluster) {
+        ArrayList<ArrayList<Integer>> clusters = new ArrayList<>();
+        for (int c = 0; c < clusterNum; c++) {
+            clusters.add(new ArrayList<>());
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            if (labels[i] >= 0) clusters.get(labels[i]).add(i);
+        }
+        ArrayList<BruteForceSweep> sweeps = new ArrayList<>();
+        for (ArrayList<Integer> members : clusters) {
+            HashSet<Integer> trajIds = new HashSet<>();
+            double[] avg = new double[2];
+            for (int i : members) {
+                trajIds.add(segments.getTrajIndex(i));
+                avg[0] += segments.getX2(i) - segments.getX1(i);
+                avg[1] += segments.getY2(i) - segments.getY1(i);
+            }
+            if (trajIds.size() < minTrajNumForCluster) continue;
+            avg[0] /= members.size();
+            avg[1] /= members.size();
+            BruteForceSweep sweep = new BruteForceSweep();
+            sweep.cos = avg[0] / Math.sqrt(avg[0] * avg[0] + avg[1] * avg[1]);
+            if (sweep.cos > 1.0) sweep.cos = 1.0;
+            if (sweep.cos < -1.0) sweep.cos = -1.0;
+            sweep.sin = Math.sqrt(1 - sweep.cos * sweep.cos);
+            if (avg[1] < 0) sweep.sin = -sweep.sin;
+
+            int n = members.size();
+            double[] x1 = new double[n], y1 = new double[n], x2 = new double[n], y2 = new double[n];
+            double[] minX = new double[n], maxX = new double[n];
+            sweep.xs = new double[2 * n];
+            for (int k = 0; k < n; k++) {
+                int i = members.get(k);
+                x1[k] = segments.getX1(i) * sweep.cos + segments.getY1(i) * sweep.sin;
+                y1[k] = -segments.getX1(i) * sweep.sin + segments.getY1(i) * sweep.cos;
+                x2[k] = segments.getX2(i) * sweep.cos + segments.getY2(i) * sweep.sin;
+                y2[k] = -segments.getX2(i) * sweep.sin + segments.getY2(i) * sweep.cos;
+                minX[k] = Math.min(x1[k], x2[k]);
+                maxX[k] = Math.max(x1[k], x2[k]);
+                sweep.xs[2 * k] = x1[k];
+                sweep.xs[2 * k + 1] = x2[k];
+            }
+            Arrays.sort(sweep.xs);
+            sweep.counts = new int[2 * n];
+            sweep.avgYs = new double[2 * n];
+            for (int e = 0; e < 2 * n; e++) {
+                double x = sweep.xs[e], sumY = 0.0;
+                for (int k = 0; k < n; k++) {
+                    if (minX[k] <= x && x <= maxX[k]) {
+                        sweep.counts[e]++;
+                        sumY += y1[k] + (x - x1[k]) / (x2[k] - x1[k]) * (y2[k] - y1[k]);
+                    }
+                }
+                sweep.avgYs[e] = sumY / sweep.counts[e];
+            }
+            sweeps.add(sweep);
+        }
+        return sweeps;
+    }
+
+    /**
+     * rotation of one cluster and the number and average rotated y of the segments at each sorted sweep position
+     */
+    static class BruteForceSweep {
+        double cos, sin;
+        double[] xs, avgYs;
+        int[] counts;
+
+        double[][] getRepresentativePoints(double minSmoothingLength, int minSegmentNumForSweep) {
+            ArrayList<double[]> points = new ArrayList<>();
+            double prevX = 0.0;
+            for (int e = 0; e < xs.length; e++) {
+                if (counts[e] >= minSegmentNumForSweep && Math.abs(xs[e] - prevX) >= minSmoothingLength) {
+                    points.add(new double[]{xs[e] * cos - avgYs[e] * sin, xs[e] * sin + avgYs[e] * cos});
+                    prevX = xs[e];
+                }
+            }
+            return points.toArray(new double[0][]);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.urbancomputing.trajectory.io;
+
+import com.urbancomputing.trajectory.cluster.TrajectoryPartition;
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Objects;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * binary trajectory file test
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class MappedTrajectoryReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void binaryMatchesText() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            File text = new File(Objects.requireNonNull(getClass().getResource(dataset)).getPath());
+            File binary = folder.newFile();
+            long trajNum = TrajectoryFormatConverter.convertTextToBinary(text, binary);
+
+            ArrayList<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(text)))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            try (MappedTrajectoryReader reader = new MappedTrajectoryReader(binary)) {
+                assertEquals(lines.size(), trajNum);
+                assertEquals(lines.size(), reader.getTrajectoryNumber());
+                ArrayList<Trajectory> trajs = reader.getTrajectories();
+                for (int k = 0; k < trajs.size(); k++) {
+                    String[] items = lines.get(k).split(" ");
+                    Trajectory traj = trajs.get(k);
+                    assertEquals(items[0], traj.getTid());
+                    assertEquals(Integer.parseInt(items[1]), traj.getPointNumber());
+                    for (int i = 0; i < traj.getPointNumber(); i++) {
+                        assertEquals(Double.parseDouble(items[2 + 2 * i]), traj.getX(i), 0.0);
+                        assertEquals(Double.parseDouble(items[3 + 2 * i]), traj.getY(i), 0.0);
+                    }
+                }
+                assertEquals(new TrajectoryPartition(trajs, 50.0).partition().toString(),
+                        new TrajectoryPartition(copyOf(trajs), 50.0).partition().toString());
+            }
+        }
+    }
+
+    private static ArrayList<Trajectory> copyOf(ArrayList<Trajectory> trajs) {
+        ArrayList<Trajectory> copies = new ArrayList<>(trajs.size());
+        for (Trajectory traj : trajs) {
+            copies.add(new Trajectory(traj.getTid(), traj.getPoints()));
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,96 @@
+package com.urbancomputing.trajectory.io;
+
+import com.urbancomputing.trajectory.model.Trajectory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * text trajectory parser test
+ *
+ * @author yuzisheng
+ * @date 2021/11/28
+ */
+public class TextTrajectoryParserTest {
+    @Test
+    public void matchesSplitParsing() throws Exception {
+        for (String dataset : new String[]{"/elk_1993.txt", "/deer_1995.txt"}) {
+            byte[] bytes = Files.readAllBytes(Paths.get(Objects.requireNonNull(getClass().getResource(dataset)).toURI()));
+            String[] lines = new String(bytes, StandardCharsets.UTF_8).split("\n");
+            // a tiny buffer has to grow and refill for every line
+            TextTrajectoryParser[] parsers = {new TextTrajectoryParser(ByteBuffer.wrap(bytes)),
+                    new TextTrajectoryParser(Channels.newChannel(new ByteArrayInputStream(bytes)), 16)};
+            for (TextTrajectoryParser parser : parsers) {
+                Iterator<Trajectory> trajs = parser.iterator();
+                for (String line : lines) {
+                    String[] items = line.split(" ");
+                    Trajectory traj = trajs.next();
+                    assertEquals(items[0], traj.getTid());
+                    assertEquals(Integer.parseInt(items[1]), traj.getPointNumber());
+                    for (int i = 0; i < traj.getPointNumber(); i++) {
+                        assertEquals(Double.parseDouble(items[2 + 2 * i]), traj.getX(i), 0.0);
+                        assertEquals(Double.parseDouble(items[3 + 2 * i]), traj.getY(i), 0.0);
+                    }
+                }
+                assertFalse(trajs.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void parsesDoublesExactly() throws Exception {
+        Random random = new Random(7);
+        ArrayList<String> values = new ArrayList<>();
+        String[] special = {"0", "-0", "+1", "1.", ".5", "-.5", "1e3", "2.5E-3", "-7e+2", "123456789012345678901234567890",
+                "0.000000000000000000000000001234", "9007199254740993", "4.9e-324", "1.7976931348623157e308", "NaN",
+                "-Infinity"};
+        for (String value : special) {
+            values.add(value);
+        }
+        for (int k = 0; k < 10000; k++) {
+            values.add(Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20)));
+            values.add(String.format("%.3f", random.nextDouble() * 2000 - 1000));
+        }
+        if (values.size() % 2 == 1) {
+            values.add("0");
+        }
+        String line = "t " + values.size() / 2 + " " + String.join(" ", values) + " \r\n\n";
+        TextTrajectoryParser parser = new TextTrajectoryParser(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+        Trajectory traj = parser.next();
+        for (int i = 0; i < values.size(); i++) {
+            double expected = Double.parseDouble(values.get(i));
+            double actual = i % 2 == 0 ? traj.getX(i / 2) : traj.getY(i / 2);
+            assertEquals(values.get(i), Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+        }
+        assertNull(parser.next());
+    }
+
+    @Test(expected = Exception.class)
+    public void rejectsWrongPointNumber() throws Exception {
+        new TextTrajectoryParser(ByteBuffer.wrap("a 2 1 2 3 4\nb 2 1 2 3\n".getBytes(StandardCharsets.UTF_8)))
+                .forEach(traj -> {
+                });
+    }
+
+    @Test
+    public void rejectsHugePointNumberWithoutAllocating() throws Exception {
+        TextTrajectoryParser parser = new TextTrajectoryParser(ByteBuffer.wrap("a 999999999 1 2 3 4\n".getBytes(StandardCharsets.UTF_8)));
+        try {
+            parser.next();
+            fail();
+        } catch (Exception e) {
+            assertEquals("line 1: trajectory a declares 999999999 points but holds 4 coordinates", e.getMessage());
+        }
+    }
+}